@@ -0,0 +1,11 @@
+package com.diseasesimulator.apigateway;
+
+import lombok.Data;
+
+@Data
+public class AggregatedSimulation {
+    private final NewSimulation simulation; // the simulation to be started
+    private final long windowMillis; // how long a window lasts at most
+    private final int maxWindowSize; // how many infections a window contains at most
+    private final int numberOfTopSpreaders; // how many of the individuals who infected the most are summarized
+}
@@ -1,21 +1,120 @@
 package com.diseasesimulator.apigateway;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rabbitmq.client.Address;
 import com.rabbitmq.client.ConnectionFactory;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.rsocket.messaging.RSocketStrategiesCustomizer;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 import reactor.rabbitmq.RabbitFlux;
 import reactor.rabbitmq.Receiver;
 import reactor.rabbitmq.ReceiverOptions;
+import reactor.rabbitmq.Sender;
+import reactor.rabbitmq.SenderOptions;
+
+import java.time.Duration;
 
 @Configuration
 public class ApplicationConfiguration {
 
+    public static final String SIMULATION_SERVICE = "simulation-service";
+    public static final String SIMULATION_STREAMS = "simulation-streams";
+
+    /**
+     * The WebClient used to call the simulation service. It keeps a bounded pool of connections,
+     * requests which can't get a connection in time fail instead of piling up.
+     */
+    @Bean
+    @Primary
+    public WebClient webClient(@Value("${simulation.service.max-connections:50}") int maxConnections,
+                               @Value("${simulation.service.max-pending:100}") int maxPending,
+                               @Value("${simulation.service.pending-timeout:1s}") Duration pendingTimeout,
+                               @Value("${simulation.service.connect-timeout:1s}") Duration connectTimeout) {
+        return createWebClient(SIMULATION_SERVICE, maxConnections, maxPending, pendingTimeout, connectTimeout);
+    }
+
+    /**
+     * The WebClient used to stream the infections of simulations directly from the simulation
+     * service. Every stream holds a connection for as long as its simulation runs, so streams get
+     * their own pool and can't starve the calls which start simulations.
+     */
+    @Bean(SIMULATION_STREAMS)
+    public WebClient streamingWebClient(@Value("${simulation.stream.max-connections:500}") int maxConnections,
+                                        @Value("${simulation.stream.max-pending:100}") int maxPending,
+                                        @Value("${simulation.stream.pending-timeout:1s}") Duration pendingTimeout,
+                                        @Value("${simulation.service.connect-timeout:1s}") Duration connectTimeout) {
+        return createWebClient(SIMULATION_STREAMS, maxConnections, maxPending, pendingTimeout, connectTimeout);
+    }
+
+    private static WebClient createWebClient(String name,
+                                             int maxConnections,
+                                             int maxPending,
+                                             Duration pendingTimeout,
+                                             Duration connectTimeout) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(maxPending)
+                .pendingAcquireTimeout(pendingTimeout)
+                .maxIdleTime(Duration.ofSeconds(30))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .tcpConfiguration(tcpClient -> tcpClient
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis()));
+
+        return WebClient.builder()
+                .baseUrl("http://localhost:8080")
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    /**
+     * Caps how many simulations are being started at once by this gateway, further starts fail
+     * right away.
+     */
+    @Bean
+    public Bulkhead simulationServiceBulkhead(
+            @Value("${simulation.service.max-concurrent-starts:20}") int maxConcurrentStarts) {
+        return Bulkhead.of(SIMULATION_SERVICE, BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentStarts)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+    }
+
+    /**
+     * Starting a simulation times out after simulation.service.timeout. Once half of the recent
+     * starts have failed or timed out the circuit breaker opens, while it's open starts fail
+     * right away.
+     */
     @Bean
-    public WebClient webClient() {
-        return WebClient.create("http://localhost:8080");
+    public Customizer<ReactiveResilience4JCircuitBreakerFactory> circuitBreakerCustomizer(
+            @Value("${simulation.service.timeout:5s}") Duration timeout,
+            @Value("${simulation.service.open-duration:10s}") Duration openDuration) {
+        return factory -> factory.configure(builder -> builder
+                .timeLimiterConfig(TimeLimiterConfig.custom()
+                        .timeoutDuration(timeout)
+                        .build())
+                .circuitBreakerConfig(CircuitBreakerConfig.custom()
+                        .slidingWindowSize(20)
+                        .minimumNumberOfCalls(10)
+                        .failureRateThreshold(50)
+                        .waitDurationInOpenState(openDuration)
+                        .build()), SIMULATION_SERVICE);
     }
 
     @Bean
@@ -32,4 +131,33 @@ public class ApplicationConfiguration {
 
         return RabbitFlux.createReceiver(receiverOptions);
     }
+
+    /**
+     * Used to declare the queue of a simulation before the simulation is started.
+     */
+    @Bean
+    public Sender sender() {
+        ConnectionFactory connectionFactory = new ConnectionFactory();
+        connectionFactory.useNio();
+
+        SenderOptions senderOptions = new SenderOptions()
+                .connectionFactory(connectionFactory)
+                .connectionSupplier(cf -> cf.newConnection(
+                        new Address[]{new Address("localhost")},
+                        "api-gateway-sender"))
+                .resourceManagementScheduler(Schedulers.boundedElastic());
+
+        return RabbitFlux.createSender(senderOptions);
+    }
+
+    /**
+     * Lets RSocket clients use the binary infection records as their data MIME type. Such clients
+     * still send their requests as JSON, only the infections are streamed as binary records.
+     */
+    @Bean
+    public RSocketStrategiesCustomizer infectionRecordsCustomizer(ObjectMapper objectMapper) {
+        return strategies -> strategies
+                .encoder(new InfectionRecordEncoder())
+                .decoder(new Jackson2JsonDecoder(objectMapper, InfectionRecords.MIME_TYPE));
+    }
 }
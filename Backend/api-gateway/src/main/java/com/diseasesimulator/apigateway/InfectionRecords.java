@@ -0,0 +1,65 @@
+package com.diseasesimulator.apigateway;
+
+import org.springframework.util.MimeType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary wire format for infections. Every infection is a fixed-width record consisting of
+ * from, infected and numberOfInteractions, each as a big-endian int32.
+ */
+public final class InfectionRecords {
+
+    public static final MimeType MIME_TYPE = new MimeType("application", "x.disease-simulator.infection-records");
+
+    public static final int RECORD_SIZE = 12; // the size of a record in bytes
+
+    private InfectionRecords() {
+    }
+
+    public static byte[] encode(NewInfected infection) {
+        return ByteBuffer.allocate(RECORD_SIZE)
+                .putInt(infection.getFrom())
+                .putInt(infection.getInfected())
+                .putInt(infection.getNumberOfInteractions())
+                .array();
+    }
+
+    public static List<NewInfected> decode(byte[] records) {
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        List<NewInfected> infections = new ArrayList<>(records.length / RECORD_SIZE);
+
+        while (buffer.remaining() >= RECORD_SIZE) {
+            NewInfected infection = new NewInfected();
+            infection.setFrom(buffer.getInt());
+            infection.setInfected(buffer.getInt());
+            infection.setNumberOfInteractions(buffer.getInt());
+            infections.add(infection);
+        }
+
+        return infections;
+    }
+
+    /**
+     * Decodes records which arrive in chunks not aligned to records, e.g. from an HTTP response.
+     * Incomplete records are kept until the rest of them arrives, so a Framer is used for a single
+     * stream of chunks only.
+     */
+    public static final class Framer {
+
+        private byte[] remainder = new byte[0]; // the start of an incomplete record
+
+        public List<NewInfected> decode(byte[] chunk) {
+            byte[] records = new byte[remainder.length + chunk.length];
+            System.arraycopy(remainder, 0, records, 0, remainder.length);
+            System.arraycopy(chunk, 0, records, remainder.length, chunk.length);
+
+            remainder = Arrays.copyOfRange(records, records.length - records.length % RECORD_SIZE, records.length);
+
+            return InfectionRecords.decode(records);
+        }
+    }
+}
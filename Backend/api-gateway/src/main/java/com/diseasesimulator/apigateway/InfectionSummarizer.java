@@ -0,0 +1,102 @@
+package com.diseasesimulator.apigateway;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Summarizes the infections of a simulation window by window. Counts which span the whole
+ * simulation so far are kept across windows, so an InfectionSummarizer is used for a single
+ * stream of infections only.
+ */
+class InfectionSummarizer {
+
+    private static final int NUMBER_OF_BUCKETS = 32; // enough for every int number of interactions
+
+    private final int numberOfTopSpreaders;
+
+    private int numberOfInfected;
+    private final Map<Integer, Integer> infectedBy = new HashMap<>(); // infections per individual
+    // the individuals who infected the most so far, ordered by their infections, see spreader
+    private final TreeSet<Long> topSpreaders = new TreeSet<>();
+
+    InfectionSummarizer(int numberOfTopSpreaders) {
+        if (numberOfTopSpreaders < 0) throw new IllegalArgumentException("numberOfTopSpreaders must not be negative");
+
+        this.numberOfTopSpreaders = numberOfTopSpreaders;
+    }
+
+    SimulationSummary summarize(List<NewInfected> window) {
+        int[] histogram = new int[NUMBER_OF_BUCKETS];
+        long numberOfInteractions = 0;
+
+        for (NewInfected infection : window) {
+            int interactions = infection.getNumberOfInteractions();
+
+            numberOfInteractions += interactions;
+            histogram[bucketOf(interactions)]++;
+
+            if (infection.getFrom() != 0) infected(infection.getFrom());
+        }
+
+        numberOfInfected += window.size();
+
+        int lastBucket = NUMBER_OF_BUCKETS;
+        while (lastBucket > 1 && histogram[lastBucket - 1] == 0) lastBucket--;
+
+        return new SimulationSummary(numberOfInfected,
+                window.size(),
+                window.isEmpty() ? 0 : (double) numberOfInteractions / window.size(),
+                Arrays.copyOf(histogram, lastBucket),
+                topSpreaders());
+    }
+
+    /**
+     * @param numberOfInteractions the number of interactions before infection
+     * @return the bucket covering the number, 0 for 0, 1 for 1, 2 for 2-3, 3 for 4-7 and so on
+     */
+    private static int bucketOf(int numberOfInteractions) {
+        return numberOfInteractions <= 0 ? 0 : 32 - Integer.numberOfLeadingZeros(numberOfInteractions);
+    }
+
+    /**
+     * Counts an infection of an individual and keeps the top spreaders up to date. As counts only
+     * ever grow by one, an individual who isn't a top spreader yet can only replace the top
+     * spreader with the fewest infections.
+     *
+     * @param id the individual who infected someone
+     */
+    private void infected(int id) {
+        int infected = infectedBy.merge(id, 1, Integer::sum);
+
+        if (topSpreaders.remove(spreader(id, infected - 1))) {
+            topSpreaders.add(spreader(id, infected));
+        } else if (topSpreaders.size() < numberOfTopSpreaders) {
+            topSpreaders.add(spreader(id, infected));
+        } else if (numberOfTopSpreaders > 0 && infected > (int) (topSpreaders.first() >>> 32)) {
+            topSpreaders.pollFirst();
+            topSpreaders.add(spreader(id, infected));
+        }
+    }
+
+    /**
+     * @return the number of infections in the upper and the id in the lower half, so spreaders are
+     * ordered by their infections
+     */
+    private static long spreader(int id, int infected) {
+        return (long) infected << 32 | id & 0xffffffffL;
+    }
+
+    private List<SimulationSummary.Spreader> topSpreaders() {
+        List<SimulationSummary.Spreader> spreaders = new ArrayList<>(topSpreaders.size());
+
+        for (long spreader : topSpreaders.descendingSet()) {
+            spreaders.add(new SimulationSummary.Spreader((int) spreader, (int) (spreader >>> 32)));
+        }
+
+        return spreaders;
+    }
+}
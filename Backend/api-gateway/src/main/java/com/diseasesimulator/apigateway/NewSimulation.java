@@ -1,6 +1,7 @@
 package com.diseasesimulator.apigateway;
 
 import lombok.Data;
+import lombok.With;
 
 @Data
 public class NewSimulation {
@@ -8,4 +9,13 @@ public class NewSimulation {
     private final int initialNumberOfInfected;
     private final int numberOfPeople; // how many Individual actors are to be simulated
     private final int probabilityOfInfection; // how likely infections should be on interactions
+    private final String engine; // how the individuals are to be simulated, INDIVIDUAL, COHORT or PARALLEL
+    @With
+    private final String wireFormat; // how infections are to be published, JSON or BINARY
+    private final String dispatcherProfile; // which dispatchers the simulation runs on, e.g. tiered or throughput
+    private final Long seed; // the seed of the random numbers in the simulation, random if null
+    // how the contact network is shaped, WINDOW (default), WATTS_STROGATZ, BARABASI_ALBERT or HOUSEHOLD
+    private final String topology;
+    @With
+    private final String simulationId; // the id and queue name of the simulation, chosen by the gateway
 }
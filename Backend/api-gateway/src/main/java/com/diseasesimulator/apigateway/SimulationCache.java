@@ -0,0 +1,174 @@
+package com.diseasesimulator.apigateway;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the infections of completed simulations which have been started with a seed by an engine
+ * which is deterministic, so the same configuration and seed always lead to the same infections.
+ * That's only the case for PARALLEL, the actors of the other engines interleave differently on
+ * every run. Simulations are only kept if every infection has been recorded, simulations which
+ * lost infections, e.g. because the simulation service dropped them or the queue of the
+ * simulation overflowed, aren't kept. The least recently used simulations
+ * are evicted once more than simulation.cache.max-simulations simulations or more than
+ * simulation.cache.max-infections infections are cached. Cached simulations are replayed either
+ * at the pacing they have been recorded at or as fast as possible, depending on
+ * simulation.cache.paced-replay.
+ */
+@Component
+public class SimulationCache {
+
+    private static final Set<String> DETERMINISTIC_ENGINES = Set.of("PARALLEL");
+
+    private final int maxSimulations;
+    private final long maxInfections;
+    private final boolean pacedReplay;
+
+    // the cached simulations, ordered from least to most recently used
+    private final Map<Key, List<Batch>> simulations = new LinkedHashMap<>(16, 0.75f, true);
+    private long numberOfInfections; // how many infections are cached across all simulations
+
+    public SimulationCache(@Value("${simulation.cache.max-simulations:64}") int maxSimulations,
+                           @Value("${simulation.cache.max-infections:5000000}") long maxInfections,
+                           @Value("${simulation.cache.paced-replay:true}") boolean pacedReplay) {
+        this.maxSimulations = maxSimulations;
+        this.maxInfections = maxInfections;
+        this.pacedReplay = pacedReplay;
+    }
+
+    /**
+     * @param newSimulation the requested simulation
+     * @return the infections of the simulation if it has been cached, nothing if it hasn't been
+     * cached or if it isn't deterministic
+     */
+    public Optional<Flux<NewInfected>> replay(NewSimulation newSimulation) {
+        if (!isDeterministic(newSimulation)) return Optional.empty();
+
+        List<Batch> batches;
+        synchronized (this) {
+            batches = simulations.get(Key.of(newSimulation));
+        }
+
+        if (batches == null) return Optional.empty();
+
+        Flux<Batch> replayed = Flux.fromIterable(batches);
+
+        if (pacedReplay) {
+            replayed = replayed.concatMap(batch -> Flux.just(batch).delaySubscription(batch.getDelay()));
+        }
+
+        return Optional.of(replayed.concatMapIterable(Batch::getInfections));
+    }
+
+    /**
+     * Records the infections of a simulation, the simulation is cached once the stream of its
+     * infections completes if as many infections have been recorded as the simulation has had.
+     * Simulations which aren't deterministic aren't recorded.
+     *
+     * @param newSimulation      the requested simulation
+     * @param batches            the infections of the simulation, batch by batch
+     * @param numberOfInfections the number of infections the simulation has had once the stream
+     *                           completes, -1 if that's unknown
+     * @return the infections of the simulation
+     */
+    public Flux<NewInfected> record(NewSimulation newSimulation, Flux<List<NewInfected>> batches,
+                                    LongSupplier numberOfInfections) {
+        if (!isDeterministic(newSimulation)) return batches.concatMapIterable(batch -> batch);
+
+        return Flux.defer(() -> {
+            List<Batch> recorded = new ArrayList<>();
+            long[] lastBatchAt = {System.nanoTime()};
+
+            return batches
+                    .doOnNext(batch -> {
+                        long now = System.nanoTime();
+                        recorded.add(new Batch(Duration.ofNanos(now - lastBatchAt[0]), batch));
+                        lastBatchAt[0] = now;
+                    })
+                    .doOnComplete(() -> {
+                        if (sizeOf(recorded) == numberOfInfections.getAsLong()) put(Key.of(newSimulation), recorded);
+                    })
+                    .concatMapIterable(batch -> batch);
+        });
+    }
+
+    private synchronized void put(Key key, List<Batch> batches) {
+        long size = sizeOf(batches);
+
+        if (size > maxInfections) return;
+
+        List<Batch> replaced = simulations.put(key, batches);
+        if (replaced != null) numberOfInfections -= sizeOf(replaced);
+        numberOfInfections += size;
+
+        Iterator<List<Batch>> leastRecentlyUsed = simulations.values().iterator();
+        while (simulations.size() > maxSimulations || numberOfInfections > maxInfections) {
+            numberOfInfections -= sizeOf(leastRecentlyUsed.next());
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private static boolean isDeterministic(NewSimulation newSimulation) {
+        return newSimulation.getSeed() != null && DETERMINISTIC_ENGINES.contains(Key.engine(newSimulation));
+    }
+
+    private static long sizeOf(List<Batch> batches) {
+        return batches.stream().mapToLong(batch -> batch.getInfections().size()).sum();
+    }
+
+    /**
+     * Identifies the infections of a simulation.
+     */
+    @lombok.Value
+    private static class Key {
+        int initialNumberOfInfected;
+        int numberOfPeople;
+        int probabilityOfInfection;
+        String engine; // engines differ in how they use the seed, so their infections differ as well
+        String topology;
+        long seed;
+
+        private static Key of(NewSimulation newSimulation) {
+            return new Key(newSimulation.getInitialNumberOfInfected(),
+                    newSimulation.getNumberOfPeople(),
+                    newSimulation.getProbabilityOfInfection(),
+                    engine(newSimulation),
+                    topology(newSimulation),
+                    newSimulation.getSeed());
+        }
+
+        /**
+         * @return the engine of the simulation, the simulation service defaults to INDIVIDUAL
+         */
+        private static String engine(NewSimulation newSimulation) {
+            return newSimulation.getEngine() == null ? "INDIVIDUAL" : newSimulation.getEngine().toUpperCase();
+        }
+
+        /**
+         * @return the topology of the simulation, the simulation service defaults to WINDOW
+         */
+        private static String topology(NewSimulation newSimulation) {
+            return newSimulation.getTopology() == null ? "WINDOW" : newSimulation.getTopology().toUpperCase();
+        }
+    }
+
+    /**
+     * The infections of a consumed message and how long after the previous message it has been consumed.
+     */
+    @lombok.Value
+    private static class Batch {
+        Duration delay;
+        List<NewInfected> infections;
+    }
+}
@@ -1,41 +1,100 @@
 package com.diseasesimulator.apigateway;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rabbitmq.client.Delivery;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.messaging.rsocket.annotation.ConnectMapping;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.MimeType;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.rabbitmq.QueueSpecification;
 import reactor.rabbitmq.Receiver;
+import reactor.rabbitmq.Sender;
 
 import javax.annotation.PreDestroy;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 @Controller
 public class SimulationController {
 
+    private static final TypeReference<List<NewInfected>> NEW_INFECTED_BATCH = new TypeReference<>() {
+    };
+
+    private static final String END_OF_SIMULATION = "simulation-end"; // the type of the last message of a simulation
+
     private final WebClient webClient;
+    private final WebClient streamingWebClient; // streams infections if they're streamed via HTTP
     private final Receiver receiver;
+    private final Sender sender;
+    private final SimulationCache cache;
+    private final Bulkhead bulkhead; // caps the simulations being started at once
+    // fails starts fast while the simulation service keeps failing
+    private final ReactiveCircuitBreaker circuitBreaker;
+    private final int replayedBatches; // how many batches are replayed to watchers at most
+    private final int watcherBufferSize; // how many batches are buffered per watcher at most
+    private final boolean directTransport; // whether infections are streamed via HTTP instead of RabbitMQ
+    // the arguments of the queues of simulations, the simulation service uses the same ones
+    private final Map<String, Object> queueArguments;
+
+    // the infections of the running simulations by simulation id, shared by all subscribers
+    private final Map<String, Flux<List<NewInfected>>> runningSimulations = new ConcurrentHashMap<>();
 
     private final ObjectMapper mapper = new ObjectMapper();
 
     private final List<RSocketRequester> requesters = new ArrayList<>();
 
     @Autowired
-    public SimulationController(WebClient webClient, Receiver receiver) {
+    public SimulationController(WebClient webClient,
+                                @Qualifier(ApplicationConfiguration.SIMULATION_STREAMS) WebClient streamingWebClient,
+                                Receiver receiver,
+                                Sender sender,
+                                SimulationCache cache,
+                                Bulkhead bulkhead,
+                                ReactiveCircuitBreakerFactory circuitBreakerFactory,
+                                @Value("${simulation.watch.replayed-batches:1000}") int replayedBatches,
+                                @Value("${simulation.watch.buffer-size:256}") int watcherBufferSize,
+                                @Value("${simulation.transport:amqp}") String transport,
+                                @Value("${simulation.queue.expires:5m}") Duration queueExpires,
+                                @Value("${simulation.queue.max-length:100000}") int queueMaxLength) {
         this.webClient = webClient;
+        this.streamingWebClient = streamingWebClient;
         this.receiver = receiver;
+        this.sender = sender;
+        this.cache = cache;
+        this.bulkhead = bulkhead;
+        this.circuitBreaker = circuitBreakerFactory.create(ApplicationConfiguration.SIMULATION_SERVICE);
+        this.replayedBatches = replayedBatches;
+        this.watcherBufferSize = watcherBufferSize;
+        this.directTransport = "direct".equalsIgnoreCase(transport);
+        this.queueArguments = Map.of(
+                "x-expires", (int) queueExpires.toMillis(),
+                "x-max-length", queueMaxLength);
     }
 
     @ConnectMapping
@@ -52,27 +111,223 @@ public class SimulationController {
         requesters.forEach(requester -> requester.rsocket().dispose());
     }
 
+    /**
+     * Starts a new simulation and streams its infections. Clients which use the binary infection
+     * records as their data MIME type get the infections published in the binary wire format as
+     * well, all other clients get them published as JSON. The stream fails if the simulation
+     * service is too busy to admit the simulation. The queue of the simulation is declared before
+     * the simulation is requested, so no infections are missed no matter when the queue is
+     * consumed, admitted simulations may have to wait for running simulations to stop. The stream
+     * completes with the simulation. Starting fails right away if this gateway is starting too many
+     * simulations at once already or while the simulation service keeps failing or timing out.
+     * Deterministic simulations are replayed from the SimulationCache if the same simulation has
+     * been completed before.
+     */
     @MessageMapping("start-simulation")
-    public Flux<NewInfected> startSimulation(final NewSimulation newSimulation) {
-        return requestSimulation(newSimulation)
-                .flatMap(queueNameResp -> queueNameResp.bodyToMono(String.class))
-                .delayElement(Duration.ofMillis(500))
-                .flatMapMany(receiver::consumeAutoAck)
-                .map(this::deserializeMessage);
+    public Flux<NewInfected> startSimulation(RSocketRequester requester, @Payload final NewSimulation newSimulation) {
+        return cache.replay(newSimulation).orElseGet(() -> {
+            // the number of infections the simulation service has had, -1 until the end of the simulation
+            AtomicLong numberOfInfections = new AtomicLong(-1);
+
+            return cache.record(newSimulation, runSimulation(requester, newSimulation, numberOfInfections::set),
+                    numberOfInfections::get);
+        });
+    }
+
+    /**
+     * Starts a new simulation like start-simulation does, but streams a summary per window of
+     * infections instead of the infections themselves. A window is summarized once it contains
+     * maxWindowSize infections or once windowMillis have passed, windows without infections
+     * aren't summarized. Clients need to use JSON as their data MIME type. The stream fails right
+     * away unless maxWindowSize and windowMillis are positive.
+     */
+    @MessageMapping("aggregated-simulation")
+    public Flux<SimulationSummary> aggregatedSimulation(RSocketRequester requester,
+                                                        @Payload final AggregatedSimulation aggregatedSimulation) {
+        if (aggregatedSimulation.getMaxWindowSize() <= 0 || aggregatedSimulation.getWindowMillis() <= 0) {
+            return Flux.error(new IllegalArgumentException("maxWindowSize and windowMillis must be positive"));
+        }
+
+        return Flux.defer(() -> {
+            InfectionSummarizer summarizer = new InfectionSummarizer(aggregatedSimulation.getNumberOfTopSpreaders());
+
+            return startSimulation(requester, aggregatedSimulation.getSimulation())
+                    .bufferTimeout(aggregatedSimulation.getMaxWindowSize(),
+                            Duration.ofMillis(aggregatedSimulation.getWindowMillis()))
+                    .map(summarizer::summarize);
+        });
+    }
+
+    /**
+     * Starts a simulation and streams its infections, batch by batch. Once the end of the
+     * simulation has been consumed, the number of infections the simulation service has had is
+     * passed on, that doesn't happen if the infections are streamed via HTTP.
+     */
+    private Flux<List<NewInfected>> runSimulation(RSocketRequester requester,
+                                                  final NewSimulation newSimulation,
+                                                  LongConsumer endOfSimulation) {
+        String simulationId = "simulation" + UUID.randomUUID();
+
+        if (directTransport) return runSimulationDirectly(simulationId, newSimulation);
+
+        String wireFormat = InfectionRecords.MIME_TYPE.isCompatibleWith(requester.dataMimeType()) ? "BINARY" : "JSON";
+        // the queue is deleted once the stream has been cancelled or completed and its consumer is gone
+        QueueSpecification queue = QueueSpecification.queue(simulationId)
+                .autoDelete(true)
+                .arguments(queueArguments);
+
+        return sender.declare(queue)
+                .then(requestSimulation(newSimulation.withWireFormat(wireFormat).withSimulationId(simulationId)))
+                .flatMap(this::checkAdmission)
+                .onErrorResume(e -> sender.delete(queue).then(Mono.error(e)))
+                .thenMany(Flux.defer(() -> share(simulationId, receiver.consumeAutoAck(simulationId)
+                        .takeUntil(this::isEndOfSimulation)
+                        .<List<NewInfected>>handle((message, sink) -> {
+                            if (!isEndOfSimulation(message)) sink.next(deserializeMessage(message));
+                            else endOfSimulation.accept(numberOfInfections(message));
+                        }))));
+    }
+
+    /**
+     * Starts a simulation whose infections are streamed via HTTP by the simulation service, which
+     * requires simulation.aggregator.sink to be DIRECT. Infections are streamed as binary records,
+     * as they're decoded here anyway.
+     */
+    private Flux<List<NewInfected>> runSimulationDirectly(String simulationId, final NewSimulation newSimulation) {
+        return requestSimulation(newSimulation.withWireFormat("BINARY").withSimulationId(simulationId))
+                .flatMap(this::checkAdmission)
+                .thenMany(Flux.defer(() -> {
+                    InfectionRecords.Framer framer = new InfectionRecords.Framer();
+
+                    return share(simulationId, streamingWebClient.get()
+                            .uri("/simulation/{simulationId}/infections", simulationId)
+                            .accept(MediaType.asMediaType(InfectionRecords.MIME_TYPE))
+                            .retrieve()
+                            .bodyToFlux(byte[].class)
+                            .map(framer::decode));
+                }));
+    }
+
+    private boolean isEndOfSimulation(Delivery message) {
+        return END_OF_SIMULATION.equals(message.getProperties().getType());
+    }
+
+    /**
+     * @param message the end of a simulation
+     * @return the number of infections the simulation has had, -1 if the message doesn't tell
+     */
+    private long numberOfInfections(Delivery message) {
+        try {
+            return Long.parseLong(new String(message.getBody(), StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Mono<Void> checkAdmission(ClientResponse response) {
+        if (response.statusCode().is2xxSuccessful()) return response.releaseBody();
+
+        String reason = response.statusCode() == HttpStatus.TOO_MANY_REQUESTS
+                ? "Too many simulations, try again later"
+                : "The simulation couldn't be started: " + response.statusCode();
+
+        return response.releaseBody().then(Mono.error(new IllegalStateException(reason)));
+    }
+
+    /**
+     * Streams the infections of a running simulation started by another client. All subscribers
+     * of a simulation share a single consumer of its queue. Watchers first get the most recent
+     * batches of the simulation replayed, every watcher has its own buffer, once it's full the
+     * oldest batches are dropped so slow watchers don't hold up the others.
+     */
+    @MessageMapping("watch-simulation")
+    public Flux<NewInfected> watchSimulation(@Payload final String simulationId) {
+        Flux<List<NewInfected>> simulation = runningSimulations.get(simulationId);
+
+        if (simulation == null) return Flux.error(new IllegalArgumentException("No running simulation " + simulationId));
+
+        return simulation
+                .onBackpressureBuffer(watcherBufferSize, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST)
+                .concatMapIterable(batch -> batch);
+    }
+
+    /**
+     * Streams the ids of the running simulations which can be watched.
+     */
+    @MessageMapping("running-simulations")
+    public Flux<String> runningSimulations() {
+        return Flux.fromIterable(List.copyOf(runningSimulations.keySet()));
+    }
+
+    /**
+     * Shares the infections of a simulation between the client which started it and its watchers.
+     * The queue is consumed as long as anyone is subscribed and the simulation is running.
+     *
+     * @param simulationId the id of the simulation
+     * @param batches      the infections of the simulation, batch by batch
+     * @return the shared infections of the simulation
+     */
+    private Flux<List<NewInfected>> share(String simulationId, Flux<List<NewInfected>> batches) {
+        Flux<List<NewInfected>> shared = batches
+                .doFinally(signalType -> runningSimulations.remove(simulationId))
+                .replay(replayedBatches)
+                .refCount();
+
+        runningSimulations.put(simulationId, shared);
+
+        return shared;
     }
 
     private Mono<ClientResponse> requestSimulation(final NewSimulation newSimulation) {
-        return webClient.post()
+        Mono<ClientResponse> request = webClient.post()
                 .uri("/simulation/start")
                 .body(Mono.just(newSimulation), NewSimulation.class)
                 .accept(MediaType.TEXT_PLAIN)
-                .exchange();
+                .exchange()
+                .flatMap(this::failOnServerError);
+
+        return circuitBreaker.run(request, this::failFast)
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .onErrorMap(BulkheadFullException.class,
+                        e -> new IllegalStateException("Too many simulations are being started, try again later"));
+    }
+
+    /**
+     * Turns server errors into failures, so the circuit breaker counts them.
+     */
+    private Mono<ClientResponse> failOnServerError(ClientResponse response) {
+        if (!response.statusCode().is5xxServerError()) return Mono.just(response);
+
+        return response.releaseBody()
+                .then(Mono.error(new IllegalStateException("The simulation service failed: " + response.statusCode())));
+    }
+
+    private Mono<ClientResponse> failFast(Throwable failure) {
+        if (failure instanceof IllegalStateException) return Mono.error(failure);
+
+        return Mono.error(new IllegalStateException("The simulation service is unavailable, try again later", failure));
     }
 
-    private NewInfected deserializeMessage(Delivery message) {
+    /**
+     * Deserializes a message published by the simulation service. A message either contains
+     * binary infection records, a single infection or a batch of infections as a JSON array.
+     *
+     * @param message the consumed message
+     * @return the infections contained in the message
+     */
+    private List<NewInfected> deserializeMessage(Delivery message) {
+        String contentType = message.getProperties().getContentType();
+
+        if (contentType != null && InfectionRecords.MIME_TYPE.isCompatibleWith(MimeType.valueOf(contentType))) {
+            return InfectionRecords.decode(message.getBody());
+        }
+
         try {
             String json = new String(message.getBody(), StandardCharsets.UTF_8);
-            return mapper.readValue(json, NewInfected.class);
+
+            if (json.startsWith("[")) return mapper.readValue(json, NEW_INFECTED_BATCH);
+
+            return List.of(mapper.readValue(json, NewInfected.class));
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,22 @@
+package com.diseasesimulator.apigateway;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SimulationSummary {
+    private final int numberOfInfected; // how many individuals have been infected so far
+    private final int newInfections; // how many individuals have been infected in the window
+    // the mean number of interactions before infection of the individuals infected in the window
+    private final double meanNumberOfInteractions;
+    // how many individuals infected in the window had 0, 1, 2-3, 4-7, ... interactions before infection
+    private final int[] numberOfInteractionsHistogram;
+    private final List<Spreader> topSpreaders; // the individuals who infected the most so far
+
+    @Data
+    public static class Spreader {
+        private final int id;
+        private final int numberOfInfected; // how many individuals the individual infected
+    }
+}
@@ -0,0 +1,61 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.SpawnProtocol;
+import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The Benchmarks class sets up actor systems for benchmarks. Infections are kept in memory
+ * instead of being published to RabbitMQ and simulations aren't stopped after
+ * simulation.max-duration. Infected individuals become infectious with the next tick and don't
+ * recover, so simulations spread until they're stopped.
+ */
+class Benchmarks {
+
+    private static final Config CONFIG = ConfigFactory.parseString(
+            "simulation.aggregator.sink = IN_MEMORY\n" +
+                    "simulation.max-duration = 1h\n" +
+                    "simulation.disease.incubation-period = 0ms\n" +
+                    "simulation.disease.infectious-period = 1h")
+            .withFallback(ConfigFactory.load());
+
+    private Benchmarks() {
+    }
+
+    static ActorSystem<SpawnProtocol.Command> createSystem(String name) {
+        return ActorSystem.create(SpawnProtocol.create(), name, CONFIG);
+    }
+
+    static void terminate(ActorSystem<?> system) throws Exception {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Spawns a Simulation actor with a new simulation id.
+     *
+     * @param system the actor system the Simulation actor is spawned in
+     * @return the spawned Simulation actor
+     */
+    static ActorRef<Simulation.SimulationCommand> spawnSimulation(ActorSystem<SpawnProtocol.Command> system)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return AskPattern.<SpawnProtocol.Command, ActorRef<Simulation.SimulationCommand>>ask(
+                system,
+                replyTo -> new SpawnProtocol.Spawn<>(Simulation.create(), "simulation" + UUID.randomUUID(),
+                        Props.empty(), replyTo),
+                Duration.ofSeconds(5),
+                system.scheduler())
+                .toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+    }
+}
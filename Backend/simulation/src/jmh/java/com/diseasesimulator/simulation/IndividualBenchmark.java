@@ -0,0 +1,66 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.testkit.typed.javadsl.BehaviorTestKit;
+import akka.actor.testkit.typed.javadsl.TestInbox;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many interactions an Individual actor handles per second, without the overhead
+ * of a dispatcher. Interactions triggered by the Individual actor are delivered right away.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class IndividualBenchmark {
+
+    private static final int NUMBER_OF_PEOPLE = 2000;
+    private static final int INTERACTIONS = 1000; // interactions handled per invocation
+
+    @Param({"0", "10", "100"})
+    public int probabilityOfInfection;
+
+    private BehaviorTestKit<Individual.IndividualEvent> individual;
+    private TestInbox<Individual.IndividualEvent> neighborhood;
+    private TestInbox<Aggregator.AggregatorEvent> aggregator;
+    private Individual.InteractedWithInfected interaction;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        TestInbox<Simulation.SimulationCommand> simulation = TestInbox.create();
+        neighborhood = TestInbox.create();
+        aggregator = TestInbox.create();
+
+        int id = NUMBER_OF_PEOPLE / 2;
+
+        individual = BehaviorTestKit.create(Individual.create(
+                simulation.getRef(),
+                aggregator.getRef(),
+                TickScheduler.immediate(),
+                new IndividualProps(NUMBER_OF_PEOPLE, probabilityOfInfection, Topology.WINDOW, 0, 100, 500),
+                ContactNetwork.window(NUMBER_OF_PEOPLE),
+                new SplittableRandom(42),
+                id));
+        individual.run(new Individual.Neighborhood(Collections.nCopies(NUMBER_OF_PEOPLE, neighborhood.getRef())));
+
+        interaction = new Individual.InteractedWithInfected(id + 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INTERACTIONS)
+    public void interact(Blackhole blackhole) {
+        for (int i = 0; i < INTERACTIONS; i++) {
+            individual.run(interaction);
+        }
+
+        blackhole.consume(neighborhood.receiveAll());
+        blackhole.consume(aggregator.receiveAll());
+    }
+}
@@ -0,0 +1,73 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.SpawnProtocol;
+import akka.actor.typed.javadsl.AskPattern;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Measures the round trip of an Individual actor which doesn't know its neighborhood yet,
+ * requesting the Simulation actor to query individuals and waiting for the response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryIndividualsBenchmark {
+
+    private static final int NUMBER_OF_PEOPLE = 2000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final int[] ids = {995, 997, 998, 1001, 1002, 1004};
+
+    private ActorSystem<SpawnProtocol.Command> system;
+    private ActorRef<Simulation.SimulationCommand> simulation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        system = Benchmarks.createSystem("QueryIndividualsBenchmark");
+        simulation = Benchmarks.spawnSimulation(system);
+
+        // nobody is infected, so the simulation stays idle
+        simulation.tell(new Simulation.StartSimulation(
+                new SimulationRequest(0, NUMBER_OF_PEOPLE, 0, Engine.INDIVIDUAL, 42L)));
+
+        // queries are ignored until the Individual actors have been spawned
+        while (true) {
+            try {
+                query();
+                return;
+            } catch (TimeoutException e) {
+                // not spawned yet
+            }
+        }
+    }
+
+    @Benchmark
+    public Individual.IndividualEvent queryIndividuals() throws Exception {
+        return query();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        simulation.tell(new Simulation.StopSimulation());
+        Benchmarks.terminate(system);
+    }
+
+    private Individual.IndividualEvent query() throws Exception {
+        return AskPattern.<Simulation.SimulationCommand, Individual.IndividualEvent>ask(
+                simulation,
+                replyTo -> new Simulation.QueryIndividuals(replyTo, ids),
+                TIMEOUT,
+                system.scheduler())
+                .toCompletableFuture()
+                .get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
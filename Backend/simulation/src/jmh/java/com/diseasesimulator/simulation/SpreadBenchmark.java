@@ -0,0 +1,87 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.SpawnProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how long it takes a simulation to infect 99% of its individuals, from the
+ * StartSimulation command until the Aggregator actor has received the infections.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpreadBenchmark {
+
+    private static final long TIMEOUT = TimeUnit.MINUTES.toNanos(5);
+
+    // the engine and the number of people, the individual engine simulates at most 2000 people
+    @Param({"INDIVIDUAL:100", "INDIVIDUAL:2000", "COHORT:100000", "COHORT:1000000",
+            "PARALLEL:100000", "PARALLEL:1000000"})
+    public String simulation;
+
+    private ActorSystem<SpawnProtocol.Command> system;
+    private SimulationRequest request;
+    private long numberOfInfected; // how many infections the benchmark waits for
+
+    private ActorRef<Simulation.SimulationCommand> running;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = Benchmarks.createSystem("SpreadBenchmark");
+
+        Engine engine = Engine.valueOf(simulation.split(":")[0]);
+        int numberOfPeople = Integer.parseInt(simulation.split(":")[1]);
+
+        // infection spreads along the ids, so larger simulations start with more infected individuals
+        request = new SimulationRequest(Math.max(5, numberOfPeople / 1000), numberOfPeople, 50, engine, 42L);
+        numberOfInfected = (long) Math.floor(numberOfPeople * 0.99);
+    }
+
+    @Setup(Level.Invocation)
+    public void spawnSimulation() throws Exception {
+        running = Benchmarks.spawnSimulation(system);
+    }
+
+    @Benchmark
+    public long spread() {
+        running.tell(new Simulation.StartSimulation(request));
+
+        String simulationId = running.path().name();
+        long deadline = System.nanoTime() + TIMEOUT;
+
+        Optional<SimulationStats> stats = Statistics.getStatistics().get(simulationId);
+        while (stats.isEmpty() || infected(stats.get()) < numberOfInfected) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Simulation " + simulationId + " didn't spread in time");
+            }
+
+            LockSupport.parkNanos(100_000);
+            stats = Statistics.getStatistics().get(simulationId);
+        }
+
+        return infected(stats.get());
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopSimulation() {
+        running.tell(new Simulation.StopSimulation());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Benchmarks.terminate(system);
+    }
+
+    private static long infected(SimulationStats stats) {
+        return stats.getOffered() + stats.getRejected();
+    }
+}
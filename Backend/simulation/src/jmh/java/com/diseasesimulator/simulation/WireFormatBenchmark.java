@@ -0,0 +1,45 @@
+package com.diseasesimulator.simulation;
+
+import akka.util.ByteString;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the Aggregator actor takes to encode a batch of infections.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class WireFormatBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    public WireFormat wireFormat;
+
+    @Param({"1", "500"})
+    public int batchSize;
+
+    private List<Aggregator.NewInfected> batch;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        batch = new ArrayList<>(batchSize);
+
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new Aggregator.NewInfected(random.nextInt(1, 1000000), random.nextInt(1, 1000000),
+                    random.nextInt(1, 100)));
+        }
+    }
+
+    @Benchmark
+    public ByteString encode() {
+        return wireFormat.encode(batch);
+    }
+}
@@ -3,26 +3,48 @@ package com.diseasesimulator.simulation;
 import akka.Done;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
 import akka.actor.typed.javadsl.*;
+import akka.japi.Pair;
+import akka.stream.ActorAttributes;
+import akka.stream.KillSwitches;
 import akka.stream.Materializer;
 import akka.stream.OverflowStrategy;
-import akka.stream.alpakka.amqp.AmqpWriteSettings;
-import akka.stream.alpakka.amqp.QueueDeclaration;
-import akka.stream.alpakka.amqp.WriteMessage;
-import akka.stream.alpakka.amqp.WriteResult;
-import akka.stream.alpakka.amqp.javadsl.AmqpFlow;
-import akka.stream.javadsl.Flow;
+import akka.stream.QueueOfferResult;
+import akka.stream.UniqueKillSwitch;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.RunnableGraph;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
 import akka.stream.javadsl.SourceQueueWithComplete;
 import akka.util.ByteString;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.typesafe.config.Config;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletionStage;
 
 /**
- * The Aggregator actor receives messages about new infections. It's responsible for aggregating
- * all of these messages related to its simulation and publishing them to RabbitMQ.
+ * The Aggregator actor receives messages about new infections. It's responsible for aggregating all
+ * of these messages related to its simulation and publishing them to RabbitMQ, or to the
+ * InfectionSink configured in simulation.aggregator.sink. Infections are published in batches, a
+ * batch is published once it's full or once its oldest infection has waited for the configured
+ * maximum latency. Batches are published in the wire format requested for the simulation.
+ * Publishing is backpressured: while RabbitMQ is slow, infections are buffered up to a bounded
+ * amount and further infections are stashed. Once more than simulation.aggregator.pause-above
+ * infections are waiting, the simulation is paused until fewer than resume-below are left, so
+ * infections are only rejected if the simulation overshoots by more than the stash holds.
+ * Infections are offered in the order they have been received. How many infections have been
+ * offered, published, dropped by the stream and rejected is tracked in the statistics of the
+ * simulation. Once the simulation is stopped, the remaining infections are published followed by
+ * the end of the simulation, which tells how many infections there have been, so consumers can tell
+ * whether they've missed any. Every infection is written to the EventLog of the simulation as well,
+ * if simulation.event-log.enabled is set. Recoveries aren't published, they're counted to tell the
+ * simulation to stop once nobody is Exposed or Infected anymore, as nobody can be infected from
+ * then on.
  */
 public class Aggregator {
 
@@ -32,22 +54,22 @@ public class Aggregator {
     /**
      * Informs the Aggregator actor that an individual has been infected
      */
-    public static final class NewInfected implements Aggregator.AggregatorEvent {
-        private final String from; // who infected the individual
-        private final String infected; // the individual which has been infected
+    public static final class NewInfected implements Aggregator.AggregatorEvent, CborSerializable {
+        private final int from; // the id of who infected the individual, 0 for the simulation
+        private final int infected; // the id of the individual which has been infected
         private final int numberOfInteractions; // number of interactions before infection
 
-        public NewInfected(String from, String infected, int numberOfInteractions) {
+        public NewInfected(int from, int infected, int numberOfInteractions) {
             this.from = from;
             this.infected = infected;
             this.numberOfInteractions = numberOfInteractions;
         }
 
-        public String getFrom() {
+        public int getFrom() {
             return from;
         }
 
-        public String getInfected() {
+        public int getInfected() {
             return infected;
         }
 
@@ -56,50 +78,191 @@ public class Aggregator {
         }
     }
 
+    /**
+     * Informs the Aggregator actor that individuals have recovered
+     */
+    public static final class Recovered implements Aggregator.AggregatorEvent, CborSerializable {
+        private final int numberOfRecovered; // how many individuals have recovered
+
+        @JsonCreator
+        public Recovered(int numberOfRecovered) {
+            this.numberOfRecovered = numberOfRecovered;
+        }
+
+        public int getNumberOfRecovered() {
+            return numberOfRecovered;
+        }
+    }
+
+    /**
+     * Tells the Aggregator actor that its simulation has been stopped. The Aggregator actor stops
+     * once every infection and the end of the simulation have been published.
+     */
+    public enum Complete implements Aggregator.AggregatorEvent {
+        INSTANCE
+    }
+
+    /**
+     * Occurs when the stream has published the end of the simulation.
+     */
+    private enum StreamCompleted implements Aggregator.AggregatorEvent {
+        INSTANCE
+    }
+
+    /**
+     * Occurs when the destination of the infections has been set up, or has failed to be set up.
+     */
+    private static final class Prepared implements Aggregator.AggregatorEvent {
+        private final Throwable failure; // why the destination couldn't be set up, null if it has been
+
+        private Prepared(Throwable failure) {
+            this.failure = failure;
+        }
+
+        public Throwable getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Occurs when the stream has accepted or refused infections offered by the Aggregator actor.
+     */
+    private static final class OfferCompleted implements Aggregator.AggregatorEvent {
+        private final int numberOfInfections; // how many infections have been offered
+        private final boolean enqueued; // whether the stream has accepted the infections
+
+        private OfferCompleted(int numberOfInfections, boolean enqueued) {
+            this.numberOfInfections = numberOfInfections;
+            this.enqueued = enqueued;
+        }
+
+        public int getNumberOfInfections() {
+            return numberOfInfections;
+        }
+
+        public boolean isEnqueued() {
+            return enqueued;
+        }
+    }
+
     public static Behavior<Aggregator.AggregatorEvent> create(ActorRef<Simulation.SimulationCommand> simulation,
-                                                              int numberOfPeople) {
-        return Behaviors.setup(context -> new AggregatorBehavior(context, simulation, numberOfPeople));
+                                                              int numberOfPeople,
+                                                              WireFormat wireFormat,
+                                                              SimulationStats stats,
+                                                              DispatcherProfile dispatcherProfile) {
+        return Behaviors.setup(context -> {
+            int maxStashed = context.getSystem().settings().config().getInt("simulation.aggregator.max-stashed");
+
+            return Behaviors.withStash(maxStashed, stash -> new AggregatorBehavior(context, stash, simulation,
+                    numberOfPeople, wireFormat, stats, dispatcherProfile));
+        });
     }
 
     public static class AggregatorBehavior extends AbstractBehavior<Aggregator.AggregatorEvent> {
 
         private final ActorRef<Simulation.SimulationCommand> simulation;
-        private final SourceQueueWithComplete<String> queue;
+        private final SourceQueueWithComplete<List<NewInfected>> queue;
+        private final UniqueKillSwitch killSwitch; // aborts the stream if the Aggregator actor stops early
+        private final CompletionStage<Done> published; // completes once the end of the simulation has been published
+        private final InfectionSink sink;
+        private final StashBuffer<AggregatorEvent> stash;
+        private final SimulationStats stats;
         private final int numberOfPeople;
+        private final int maxBuffered; // how many infections are buffered before stashing further ones
+        private final int pauseAbove; // how many infections are waiting at most before pausing the simulation
+        private final int resumeBelow; // how few infections are waiting before resuming the simulation
         private int numberOfInfected;
+        private int numberOfRecovered;
+        private boolean inactive; // whether nobody is Exposed or Infected anymore
+        private EventLog eventLog; // the log infections are written to, null if disabled
+
+        // the infections waiting to be offered to the stream, offered all at once
+        private List<NewInfected> buffered = new ArrayList<>();
+        private boolean prepared; // whether the destination of the infections has been set up
+        private boolean offering; // whether an offer to the stream is pending
+        private boolean completing; // whether the simulation has been stopped
+        private boolean completed; // whether the stream has been completed
+        private boolean unstashing; // whether stashed infections are being handled
+        private boolean paused; // whether the simulation has been paused
 
         /**
-         * Sets up the connection to RabbitMQ via Akka Streams
+         * Sets up the connection to the InfectionSink via Akka Streams. Infections are grouped into
+         * batches of at most simulation.aggregator.batch-size infections, waiting at most
+         * simulation.aggregator.batch-max-latency for a batch to fill up. If the dispatcher profile
+         * names a dispatcher for the Aggregator actor, the stream runs on it as well. The stream
+         * runs on the system materializer, so Aggregator actors don't each set up their own.
+         * Infections are buffered until the destination of the infections, e.g. the queue of the
+         * simulation, has been set up without blocking the Aggregator actor.
          *
          * @param context
-         * @param simulation     the Simulation actor this Aggregator actor is related to
-         * @param numberOfPeople the number of people in this simulation
+         * @param stash             the stash used while the buffer is full
+         * @param simulation        the Simulation actor this Aggregator actor is related to
+         * @param numberOfPeople    the number of people in this simulation
+         * @param wireFormat        the format infections are published in
+         * @param stats             the statistics of the simulation
+         * @param dispatcherProfile the dispatchers of the simulation
          */
         private AggregatorBehavior(ActorContext<AggregatorEvent> context,
+                                   StashBuffer<AggregatorEvent> stash,
                                    ActorRef<Simulation.SimulationCommand> simulation,
-                                   int numberOfPeople) {
+                                   int numberOfPeople,
+                                   WireFormat wireFormat,
+                                   SimulationStats stats,
+                                   DispatcherProfile dispatcherProfile) {
             super(context);
+            this.stash = stash;
             this.simulation = simulation;
             this.numberOfPeople = numberOfPeople;
+            this.stats = stats;
+
+            final Config config = context.getSystem().settings().config().getConfig("simulation.aggregator");
+            final int batchSize = config.getInt("batch-size");
+            final Duration batchMaxLatency = config.getDuration("batch-max-latency");
+            this.sink = config.getEnum(InfectionSink.class, "sink");
+            this.maxBuffered = config.getInt("max-buffered");
+            this.pauseAbove = config.getInt("pause-above");
+            this.resumeBelow = config.getInt("resume-below");
+            final int maxUnconfirmed = config.getInt("max-unconfirmed");
 
-            String simulationName = simulation.path().name();
-            final QueueDeclaration queueDeclaration = QueueDeclaration.create(simulationName);
+            final Config systemConfig = context.getSystem().settings().config();
+            if (systemConfig.getBoolean("simulation.event-log.enabled")) {
+                try {
+                    this.eventLog = EventLog.create(systemConfig, simulation.path().name());
+                } catch (IOException e) {
+                    context.getLog().warn("Creating the event log failed, continuing without it", e);
+                }
+            }
 
-            final AmqpWriteSettings settings =
-                    AmqpWriteSettings.create(Connections.getConnection().getAmqpConnectionProvider())
-                            .withRoutingKey(simulationName)
-                            .withDeclaration(queueDeclaration)
-                            .withBufferSize(numberOfPeople)
-                            .withConfirmationTimeout(Duration.ofMillis(5000));
+            final RunnableGraph<Pair<Pair<SourceQueueWithComplete<List<NewInfected>>, UniqueKillSwitch>,
+                    CompletionStage<Done>>> stream =
+                    Source.<List<NewInfected>>queue(1, OverflowStrategy.backpressure(), 1)
+                            .viaMat(KillSwitches.single(), Keep.both())
+                            .async()
+                            .mapConcat(infections -> infections)
+                            .groupedWithin(batchSize, batchMaxLatency)
+                            .map(batch -> Pair.create(wireFormat.encode(batch), batch.size()))
+                            .concat(Source.lazySingle(() -> Pair.create(ByteString.fromString(
+                                    Long.toString(stats.getOffered() + stats.getRejected())), 0))).async()
+                            .via(sink.publish(context.getSystem(), simulation.path().name(), wireFormat,
+                                    maxUnconfirmed))
+                            .async()
+                            .toMat(Sink.foreach(result -> {
+                                if (result.first()) stats.published(result.second());
+                                else stats.dropped(result.second());
+                            }), Keep.both());
 
-            final Flow<WriteMessage, WriteResult, CompletionStage<Done>> amqpFlow =
-                    AmqpFlow.createWithConfirm(settings);
+            final Pair<Pair<SourceQueueWithComplete<List<NewInfected>>, UniqueKillSwitch>,
+                    CompletionStage<Done>> materialized =
+                    (dispatcherProfile.getAggregator() == null
+                            ? stream
+                            : stream.withAttributes(ActorAttributes.dispatcher(dispatcherProfile.getAggregator())))
+                            .run(Materializer.matFromSystem(context.getSystem()));
+            this.queue = materialized.first().first();
+            this.killSwitch = materialized.first().second();
+            this.published = materialized.second();
 
-            this.queue = Source.<String>queue(numberOfPeople, OverflowStrategy.dropTail()).async()
-                    .map(message -> WriteMessage.create(ByteString.fromString(message))).async()
-                    .via(amqpFlow).async()
-                    .to(Sink.ignore())
-                    .run(Materializer.createMaterializer(getContext()));
+            context.pipeToSelf(sink.prepare(context.getSystem(), simulation.path().name()),
+                    (done, failure) -> new Prepared(failure));
         }
 
         @Override
@@ -107,49 +270,250 @@ public class Aggregator {
             ReceiveBuilder<Aggregator.AggregatorEvent> builder = newReceiveBuilder();
 
             builder.onMessage(NewInfected.class, this::addInfection);
+            builder.onMessage(Recovered.class, this::addRecovered);
+            builder.onMessage(Prepared.class, this::prepared);
+            builder.onMessage(OfferCompleted.class, this::offerCompleted);
+            builder.onMessage(Complete.class, this::complete);
+            builder.onMessageEquals(StreamCompleted.INSTANCE, Behaviors::stopped);
+            builder.onSignal(PostStop.class, signal -> stopped());
 
             return builder.build();
         }
 
         /**
          * NewInfected event handler
-         * Extracts the relevant information from the event and publishes a JSON representation of
-         * that information to RabbitMQ. Tracks the number of infected individuals in the simulation and
-         * tells the simulation to stop once almost every individual has been infected.
+         * Buffers the event to be published to RabbitMQ as part of the next batch. While the buffer
+         * is full or earlier infections are stashed the event is stashed as well, so infections are
+         * offered in order. While the stash is full the event is rejected. Pauses the simulation
+         * once too many infections are waiting. Tracks the number of infected individuals in the
+         * simulation.
          *
          * @param event the received NewInfected event
          * @return
          */
         private Behavior<AggregatorEvent> addInfection(NewInfected event) {
-            String from = event.getFrom();
-            String fromId = extractIdFromName(from);
+            if (!unstashing && (buffered.size() >= maxBuffered || !stash.isEmpty())) {
+                if (!stash.isFull()) {
+                    stash.stash(event);
+                    pauseWhenBehind();
+                    return Behaviors.same();
+                }
 
-            if (!from.contains("individual")) fromId = "0";
+                stats.rejected(1);
+            } else {
+                stats.offered(1);
+                buffered.add(event);
+                offerBuffered();
+                pauseWhenBehind();
+            }
 
-            String infected = event.getInfected();
-            String infectedId = extractIdFromName(infected);
+            appendToEventLog(event);
 
-            int numberOfInteractions = event.getNumberOfInteractions();
+            numberOfInfected++;
 
-            queue.offer(newMessage(fromId, infectedId, numberOfInteractions));
+            if (numberOfInfected == 1) stats.firstInfection();
 
-            numberOfInfected++;
+            if (numberOfInfected >= Math.floor(numberOfPeople * 0.99)) stats.ninetyNinePercentInfected();
+
+            stopWhenInactive();
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Recovered event handler
+         * Tracks the number of recovered individuals in the simulation.
+         *
+         * @param event the received Recovered event
+         * @return
+         */
+        private Behavior<AggregatorEvent> addRecovered(Recovered event) {
+            numberOfRecovered += event.getNumberOfRecovered();
+            stats.recovered(event.getNumberOfRecovered());
+
+            stopWhenInactive();
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Tells the simulation to stop once everyone who has been infected has recovered. As
+         * stashed infections haven't been counted yet, the simulation isn't stopped while
+         * infections are stashed.
+         */
+        private void stopWhenInactive() {
+            if (inactive || numberOfInfected == 0 || numberOfRecovered < numberOfInfected || !stash.isEmpty()) {
+                return;
+            }
+
+            inactive = true;
+            simulation.tell(new Simulation.StopSimulation());
+        }
+
+        /**
+         * Pauses the simulation once more than pause-above infections are buffered or stashed, so
+         * no further infections are produced while the stream catches up.
+         */
+        private void pauseWhenBehind() {
+            if (paused || buffered.size() + stash.size() <= pauseAbove) return;
+
+            paused = true;
+            stats.paused();
+            simulation.tell(new Simulation.PauseSimulation());
+        }
+
+        /**
+         * Resumes the paused simulation once fewer than resume-below infections are buffered or
+         * stashed.
+         */
+        private void resumeWhenCaughtUp() {
+            if (!paused || buffered.size() + stash.size() >= resumeBelow) return;
+
+            paused = false;
+            simulation.tell(new Simulation.ResumeSimulation());
+        }
 
-            if (numberOfInfected >= Math.floor(numberOfPeople * 0.99)) {
-                getContext().scheduleOnce(Duration.ofMillis(2000), simulation, new Simulation.StopSimulation());
+        /**
+         * Prepared event handler
+         * Starts offering the buffered infections. If the destination couldn't be set up, the
+         * stream is failed and the simulation is stopped, as its infections can't be published.
+         *
+         * @param event the received Prepared event
+         * @return
+         */
+        private Behavior<AggregatorEvent> prepared(Prepared event) {
+            if (event.getFailure() != null) {
+                getContext().getLog().error("Setting up the destination of the infections failed",
+                        event.getFailure());
+                completed = true;
+                queue.fail(event.getFailure());
+                simulation.tell(new Simulation.StopSimulation());
+                return Behaviors.stopped();
             }
 
+            prepared = true;
+            offerBuffered();
+            completeWhenDrained();
+
             return Behaviors.same();
         }
 
-        private String extractIdFromName(String name) {
-            return name.substring(name.lastIndexOf("individual") + "individual".length());
+        /**
+         * OfferCompleted event handler
+         * Offers the infections buffered in the meantime and takes as many stashed infections as
+         * fit into the buffer again. Resumes the simulation if it has caught up.
+         *
+         * @param event the received OfferCompleted event
+         * @return
+         */
+        private Behavior<AggregatorEvent> offerCompleted(OfferCompleted event) {
+            offering = false;
+
+            if (!event.isEnqueued()) stats.dropped(event.getNumberOfInfections());
+
+            offerBuffered();
+
+            int unstashed = Math.min(stash.size(), maxBuffered - buffered.size());
+
+            if (unstashed > 0) {
+                // the unstashed infections fit into the buffer, they're not stashed again
+                unstashing = true;
+                Behavior<AggregatorEvent> behavior = stash.unstash(this, unstashed, infection -> infection);
+                unstashing = false;
+                resumeWhenCaughtUp();
+                return behavior;
+            }
+
+            completeWhenDrained();
+            resumeWhenCaughtUp();
+
+            return Behaviors.same();
         }
 
-        private String newMessage(String fromId, String infectedId, int numberOfInteractions) {
-            return "{\"from\":" + fromId +
-                    ",\"infected\":" + infectedId +
-                    ",\"numberOfInteractions\":" + numberOfInteractions + "}";
+        /**
+         * Complete event handler
+         * Completes the stream once every buffered and stashed infection has been offered.
+         *
+         * @param event the received Complete event
+         * @return
+         */
+        private Behavior<AggregatorEvent> complete(Complete event) {
+            completing = true;
+            completeWhenDrained();
+            return Behaviors.same();
+        }
+
+        /**
+         * Completes the stream if the simulation has been stopped and no infections are waiting
+         * to be offered anymore. Once the stream has published the end of the simulation, the
+         * Aggregator actor is told so.
+         */
+        private void completeWhenDrained() {
+            if (!completing || !prepared || completed || offering || !buffered.isEmpty() || !stash.isEmpty()) return;
+
+            completed = true;
+            queue.complete();
+
+            getContext().pipeToSelf(published, (done, failure) -> StreamCompleted.INSTANCE);
+        }
+
+        /**
+         * Appends an infection to the EventLog. If the EventLog fails, it's discarded and the
+         * simulation continues without it.
+         *
+         * @param event the infection
+         */
+        private void appendToEventLog(NewInfected event) {
+            if (eventLog == null) return;
+
+            try {
+                eventLog.append(event.getFrom(), event.getInfected(), event.getNumberOfInteractions());
+            } catch (IOException e) {
+                getContext().getLog().warn("Writing the event log failed, continuing without it", e);
+                eventLog.discard();
+                eventLog = null;
+            }
+        }
+
+        /**
+         * PostStop signal handler
+         * Aborts the stream, which runs on the system materializer and would outlive the
+         * Aggregator actor otherwise, e.g. if it's stopped after completion-timeout while the
+         * stream is stuck. Once the stream has completed this has no effect. Releases what the
+         * InfectionSink has set up for the simulation and closes the EventLog, so the simulation
+         * can be read back.
+         *
+         * @return
+         */
+        private Behavior<AggregatorEvent> stopped() {
+            killSwitch.abort(new IllegalStateException("The Aggregator actor has stopped"));
+            sink.release(getContext().getSystem(), simulation.path().name());
+
+            if (eventLog == null) return Behaviors.same();
+
+            try {
+                eventLog.close();
+            } catch (IOException e) {
+                getContext().getLog().warn("Closing the event log failed", e);
+            }
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Offers all buffered infections to the stream at once, unless an offer is still pending or
+         * the destination hasn't been set up yet. The stream backpressures offers while RabbitMQ
+         * can't keep up.
+         */
+        private void offerBuffered() {
+            if (!prepared || offering || buffered.isEmpty()) return;
+
+            List<NewInfected> infections = buffered;
+            buffered = new ArrayList<>();
+            offering = true;
+
+            getContext().pipeToSelf(queue.offer(infections), (result, failure) ->
+                    new OfferCompleted(infections.size(), failure == null && result == QueueOfferResult.enqueued()));
         }
     }
 }
@@ -0,0 +1,238 @@
+package com.diseasesimulator.simulation;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.Scheduler;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.RestartSettings;
+import akka.stream.alpakka.amqp.AmqpCachedConnectionProvider;
+import akka.stream.alpakka.amqp.AmqpUriConnectionProvider;
+import akka.stream.alpakka.amqp.AmqpWriteSettings;
+import akka.stream.alpakka.amqp.WriteMessage;
+import akka.stream.alpakka.amqp.javadsl.AmqpFlow;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.MergeHub;
+import akka.stream.javadsl.RestartFlow;
+import akka.stream.javadsl.Sink;
+import akka.util.ByteString;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Method;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.ExecutionContextExecutor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AmqpPublisher class publishes the batches of every simulation to RabbitMQ over a single
+ * cached connection configured in simulation.amqp. Batches are published via a pool of channels,
+ * each of which is a stream run once on the system materializer, simulations are multiplexed onto
+ * them by routing key. All batches of a simulation are published via the same channel, so they
+ * stay in order. The queue of a simulation is deleted once its last consumer is gone, once it has
+ * been unused for simulation.amqp.queue.expires or simulation.amqp.queue.reap-after after the
+ * simulation has been stopped, unless it's still consumed. A queue keeps at most
+ * simulation.amqp.queue.max-length batches, the oldest ones are dropped first. The API gateway
+ * declares the queues with the same arguments. Queues are declared on a single channel, which
+ * blocks, so declarations run on the dispatcher simulation.amqp.declaration-dispatcher rather
+ * than on the threads of actors. There's an AmqpPublisher per actor system, it's an extension
+ * created on first use.
+ */
+public class AmqpPublisher implements Extension {
+
+    private static final Logger log = LoggerFactory.getLogger(AmqpPublisher.class);
+
+    private final AmqpCachedConnectionProvider connectionProvider;
+    private final List<Sink<Publication, NotUsed>> channels = new ArrayList<>();
+    private final Duration confirmationTimeout;
+    private final Map<String, Object> queueArguments;
+    private final Duration reapAfter; // how long queues of stopped simulations are kept at least
+    private final Scheduler scheduler;
+    private final ExecutionContextExecutor declarationExecutor; // runs the blocking declarations
+
+    private Channel declarations; // the channel queues are declared and deleted on, guarded by this
+
+    private AmqpPublisher(ActorSystem<?> system) {
+        Config config = system.settings().config().getConfig("simulation.amqp");
+
+        this.connectionProvider = AmqpCachedConnectionProvider.create(
+                AmqpUriConnectionProvider.create(config.getString("uri")));
+        this.confirmationTimeout = config.getDuration("confirmation-timeout");
+        this.queueArguments = Map.of(
+                "x-expires", (int) config.getDuration("queue.expires").toMillis(),
+                "x-max-length", config.getInt("queue.max-length"));
+        this.reapAfter = config.getDuration("queue.reap-after");
+        this.scheduler = system.scheduler();
+        this.declarationExecutor = system.dispatchers()
+                .lookup(DispatcherSelector.fromConfig("simulation.amqp.declaration-dispatcher"));
+
+        AmqpWriteSettings settings = AmqpWriteSettings.create(connectionProvider)
+                .withBufferSize(config.getInt("buffer-size"))
+                .withConfirmationTimeout(confirmationTimeout);
+
+        RestartSettings restartSettings = RestartSettings.create(Duration.ofMillis(100), Duration.ofSeconds(5), 0.2);
+        Materializer materializer = Materializer.matFromSystem(system);
+
+        for (int i = 0; i < config.getInt("channels"); i++) {
+            channels.add(MergeHub.of(Publication.class, config.getInt("per-simulation-buffer-size"))
+                    .map(publication -> Pair.create(publication.message, publication))
+                    .via(RestartFlow.withBackoff(restartSettings,
+                            () -> AmqpFlow.<Publication>createWithConfirmAndPassThroughUnordered(settings)))
+                    .to(Sink.foreach(result -> result.second().confirmed.complete(result.first().confirmed())))
+                    .run(materializer));
+        }
+    }
+
+    /**
+     * @param system the actor system
+     * @return the AmqpPublisher of the actor system, created on first use
+     */
+    public static AmqpPublisher get(ActorSystem<?> system) {
+        return Id.INSTANCE.apply(system);
+    }
+
+    /**
+     * Declares the queue of a simulation, batches of a simulation are published to its queue.
+     *
+     * @param queueName the name of the queue
+     * @return completes once the queue has been declared, fails if it can't be declared
+     */
+    public CompletionStage<Done> declare(String queueName) {
+        return CompletableFuture.supplyAsync(() -> {
+            synchronized (this) {
+                try {
+                    declarationChannel().queueDeclare(queueName, false, false, true, queueArguments);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }
+
+            return Done.getInstance();
+        }, declarationExecutor);
+    }
+
+    /**
+     * Deletes the queue of a stopped simulation after simulation.amqp.queue.reap-after, unless
+     * it's still consumed. The deletion blocks, so it runs on the declaration dispatcher.
+     *
+     * @param queueName the name of the queue
+     */
+    private void reap(String queueName) {
+        scheduler.scheduleOnce(reapAfter, () -> delete(queueName), declarationExecutor);
+    }
+
+    /**
+     * Deletes a queue unless it's still consumed. RabbitMQ refuses to delete a consumed queue with
+     * PRECONDITION_FAILED, such a queue is deleted once its last consumer is gone. Any other
+     * failure is logged. Either way RabbitMQ closes the declaration channel, which is opened again
+     * by the next declaration.
+     *
+     * @param queueName the name of the queue
+     */
+    private synchronized void delete(String queueName) {
+        try {
+            declarationChannel().queueDelete(queueName, true, false);
+        } catch (IOException e) {
+            if (!isPreconditionFailed(e)) log.warn("Deleting the queue {} failed", queueName, e);
+        }
+    }
+
+    private static boolean isPreconditionFailed(IOException e) {
+        if (!(e.getCause() instanceof ShutdownSignalException)) return false;
+
+        Method reason = ((ShutdownSignalException) e.getCause()).getReason();
+
+        return reason instanceof AMQP.Channel.Close
+                && ((AMQP.Channel.Close) reason).getReplyCode() == AMQP.PRECONDITION_FAILED;
+    }
+
+    private Channel declarationChannel() throws IOException {
+        if (declarations == null || !declarations.isOpen()) {
+            Connection connection = connectionProvider.get();
+            declarations = connection.createChannel();
+        }
+
+        return declarations;
+    }
+
+    /**
+     * Creates the flow publishing the batches of a simulation. For every batch the flow emits
+     * whether it has been confirmed by RabbitMQ and the number of infections in it. Batches which
+     * haven't been confirmed within the confirmation timeout, e.g. because their channel has
+     * been restarted, count as not published.
+     *
+     * @param queueName  the name of the queue of the simulation, used as routing key
+     * @param properties the properties of published messages, apart from the end of the simulation
+     * @param end        the properties of the message marking the end of the simulation
+     * @param bufferSize how many batches are waiting for confirmation at most
+     * @return the flow publishing the batches
+     */
+    public Flow<Pair<ByteString, Integer>, Pair<Boolean, Integer>, NotUsed> publish(
+            String queueName,
+            com.rabbitmq.client.AMQP.BasicProperties properties,
+            com.rabbitmq.client.AMQP.BasicProperties end,
+            int bufferSize) {
+        Sink<Publication, NotUsed> channel = channels.get(Math.floorMod(queueName.hashCode(), channels.size()));
+
+        return Flow.<Pair<ByteString, Integer>>create()
+                .map(batch -> new Publication(WriteMessage.create(batch.first())
+                        .withRoutingKey(queueName)
+                        .withProperties(batch.second() == 0 ? end : properties), batch.second()))
+                .alsoTo(channel)
+                .mapAsync(bufferSize, publication -> publication.result(confirmationTimeout.multipliedBy(2)))
+                .watchTermination((notUsed, done) -> {
+                    done.whenComplete((result, failure) -> reap(queueName));
+                    return notUsed;
+                });
+    }
+
+    public static final class Id extends ExtensionId<AmqpPublisher> {
+
+        private static final Id INSTANCE = new Id();
+
+        private Id() {
+        }
+
+        @Override
+        public AmqpPublisher createExtension(ActorSystem<?> system) {
+            return new AmqpPublisher(system);
+        }
+    }
+
+    /**
+     * A batch published via one of the channels, completed once RabbitMQ has confirmed it.
+     */
+    private static final class Publication {
+
+        private final WriteMessage message;
+        private final int numberOfInfections;
+        private final CompletableFuture<Boolean> confirmed = new CompletableFuture<>();
+
+        private Publication(WriteMessage message, int numberOfInfections) {
+            this.message = message;
+            this.numberOfInfections = numberOfInfections;
+        }
+
+        private CompletionStage<Pair<Boolean, Integer>> result(Duration timeout) {
+            return confirmed
+                    .completeOnTimeout(false, timeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .thenApply(isConfirmed -> Pair.create(isConfirmed, numberOfInfections));
+        }
+    }
+}
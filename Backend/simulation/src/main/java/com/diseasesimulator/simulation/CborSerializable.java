@@ -0,0 +1,8 @@
+package com.diseasesimulator.simulation;
+
+/**
+ * Marks messages which are sent between the nodes of a cluster. These messages are serialized
+ * using Jackson CBOR, see cluster.conf.
+ */
+public interface CborSerializable {
+}
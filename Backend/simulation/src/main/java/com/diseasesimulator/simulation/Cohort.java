@@ -0,0 +1,914 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.RecipientRef;
+import akka.actor.typed.javadsl.*;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Cohort actors simulate a contiguous range of individuals each. Instead of spawning an actor
+ * per individual, a Cohort actor keeps the state of its individuals in primitive arrays and
+ * follows the same rules as Individual actors do. Interactions between individuals are
+ * collected per Cohort actor and sent as batches, which allows for simulations with millions
+ * of individuals. In a cluster, Cohort actors can be sharded entities spread across the nodes,
+ * keyed by the id of their simulation and their index within it. The individuals exposed or
+ * infected while handling an event progress together, with a single Progressed event delayed
+ * via the TickScheduler for all of them. Sharded Cohort actors share a TickScheduler per node
+ * and simulation, see TickSchedulers. A sharded Cohort actor which is moved to another node hands
+ * the state of its individuals to its Simulation actor, which sets it up with that state again.
+ */
+public class Cohort {
+
+    public static final EntityTypeKey<Cohort.CohortEvent> ENTITY_TYPE_KEY =
+            EntityTypeKey.create(Cohort.CohortEvent.class, "Cohort");
+
+    interface CohortEvent {
+    }
+
+    /**
+     * Occurs once after the Simulation actor has spawned all of its Cohort actors.
+     * Contains the actor refs of every Cohort actor in the simulation, indexed by
+     * (id - 1) / cohortSize. Only ever sent locally, sharded Cohort actors resolve the other
+     * Cohort actors themselves, so it isn't serializable.
+     */
+    public static final class Cohorts implements Cohort.CohortEvent {
+
+        private final List<RecipientRef<Cohort.CohortEvent>> cohorts;
+
+        public Cohorts(List<RecipientRef<Cohort.CohortEvent>> cohorts) {
+            this.cohorts = cohorts;
+        }
+
+        public List<RecipientRef<Cohort.CohortEvent>> getCohorts() {
+            return cohorts;
+        }
+    }
+
+    /**
+     * Occurs once when a Cohort actor is a sharded entity, before any other event is handled.
+     * Contains what a Cohort actor spawned by its Simulation actor is created with, sharded
+     * Cohort actors resolve the other Cohort actors of their simulation via sharding. A Cohort
+     * actor which has been moved to another node is set up with the state it has handed off.
+     */
+    public static final class Setup implements Cohort.CohortEvent, CborSerializable {
+
+        private final ActorRef<Simulation.SimulationCommand> simulation;
+        private final ActorRef<Aggregator.AggregatorEvent> aggregator;
+        private final IndividualProps props;
+        private final long seed; // the seed of the Cohort actors own stream of random numbers
+        private final int firstId;
+        private final int cohortSize;
+        private final int numberOfCohorts; // how many Cohort actors are in the simulation
+        private final byte[] groups; // the handed off groups of the individuals, null for a new Cohort actor
+        private final int[] numberOfInteractions; // the handed off numbers of interactions, null for a new one
+
+        public Setup(ActorRef<Simulation.SimulationCommand> simulation,
+                     ActorRef<Aggregator.AggregatorEvent> aggregator,
+                     IndividualProps props,
+                     long seed,
+                     int firstId,
+                     int cohortSize,
+                     int numberOfCohorts,
+                     byte[] groups,
+                     int[] numberOfInteractions) {
+            this.simulation = simulation;
+            this.aggregator = aggregator;
+            this.props = props;
+            this.seed = seed;
+            this.firstId = firstId;
+            this.cohortSize = cohortSize;
+            this.numberOfCohorts = numberOfCohorts;
+            this.groups = groups;
+            this.numberOfInteractions = numberOfInteractions;
+        }
+
+        public ActorRef<Simulation.SimulationCommand> getSimulation() {
+            return simulation;
+        }
+
+        public ActorRef<Aggregator.AggregatorEvent> getAggregator() {
+            return aggregator;
+        }
+
+        public IndividualProps getProps() {
+            return props;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getFirstId() {
+            return firstId;
+        }
+
+        public int getCohortSize() {
+            return cohortSize;
+        }
+
+        public int getNumberOfCohorts() {
+            return numberOfCohorts;
+        }
+
+        public byte[] getGroups() {
+            return groups;
+        }
+
+        public int[] getNumberOfInteractions() {
+            return numberOfInteractions;
+        }
+    }
+
+    /**
+     * Occurs when sharding moves a sharded Cohort actor to another node or passivates it. The
+     * Cohort actor hands the state of its individuals to its Simulation actor and stops.
+     */
+    public enum HandOff implements Cohort.CohortEvent, CborSerializable {
+        INSTANCE
+    }
+
+    /**
+     * Occurs when the receptionist has found the Simulation actor of a sharded Cohort actor which
+     * hasn't been set up. Only ever sent by the receptionist to the Cohort actor.
+     */
+    private static final class SimulationFound implements Cohort.CohortEvent {
+
+        private final Set<ActorRef<Simulation.SimulationCommand>> simulations;
+
+        private SimulationFound(Set<ActorRef<Simulation.SimulationCommand>> simulations) {
+            this.simulations = simulations;
+        }
+    }
+
+    /**
+     * Occurs simulation.sharding.setup-timeout after a sharded Cohort actor which hasn't been set
+     * up has started looking up its Simulation actor. Only ever sent by the Cohort actor to itself.
+     */
+    private enum SetupTimedOut implements Cohort.CohortEvent {
+        INSTANCE
+    }
+
+    /**
+     * Occurs when the contact network of a sharded Cohort actor has been generated, or has failed
+     * to be generated. Only ever sent by the Cohort actor to itself.
+     */
+    private static final class NetworkGenerated implements Cohort.CohortEvent {
+
+        private final ContactNetwork network; // null if it has failed to be generated
+        private final Throwable failure;
+
+        private NetworkGenerated(ContactNetwork network, Throwable failure) {
+            this.network = network;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Occurs when the simulation of a sharded Cohort actor is paused or resumed, as the Aggregator
+     * actor can't keep up with its infections or has caught up again.
+     */
+    public enum Throttle implements Cohort.CohortEvent, CborSerializable {
+        PAUSE,
+        RESUME
+    }
+
+    /**
+     * Occurs when the simulation of the Cohort actor has been stopped.
+     */
+    public enum Stop implements Cohort.CohortEvent, CborSerializable {
+        INSTANCE
+    }
+
+    /**
+     * Occurs when individuals of this Cohort actor are forced to change their group to Infected.
+     * At the beginning of a simulation the Simulation actor infects a specific number of
+     * individuals chosen by the user using this event.
+     */
+    public static final class Infected implements Cohort.CohortEvent, CborSerializable {
+
+        private final int[] ids; // the infected individuals
+
+        @JsonCreator
+        public Infected(int[] ids) {
+            this.ids = ids;
+        }
+
+        public int[] getIds() {
+            return ids;
+        }
+    }
+
+    /**
+     * Occurs when the incubation or infectious period of individuals of this Cohort actor is over.
+     */
+    public static final class Progressed implements Cohort.CohortEvent, CborSerializable {
+
+        private final int[] ids; // the individuals whose period is over
+
+        @JsonCreator
+        public Progressed(int[] ids) {
+            this.ids = ids;
+        }
+
+        public int[] getIds() {
+            return ids;
+        }
+    }
+
+    /**
+     * Occurs when individuals interact with individuals of this Cohort actor. Every interaction
+     * consists of the individual which has been interacted with, the individual which
+     * interacted and whether that individual has been infected at the time of the interaction.
+     */
+    public static final class Interactions implements Cohort.CohortEvent, CborSerializable {
+
+        private final int[] individuals; // the individuals of this Cohort actor
+        private final int[] interactedWith; // who the individuals interacted with
+        private final boolean[] infected; // whether who they interacted with has been infected
+        private final int size;
+
+        public Interactions(int[] individuals, int[] interactedWith, boolean[] infected, int size) {
+            this.individuals = individuals;
+            this.interactedWith = interactedWith;
+            this.infected = infected;
+            this.size = size;
+        }
+
+        public int[] getIndividuals() {
+            return individuals;
+        }
+
+        public int[] getInteractedWith() {
+            return interactedWith;
+        }
+
+        public boolean[] getInfected() {
+            return infected;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    public static Behavior<Cohort.CohortEvent> create(ActorRef<Simulation.SimulationCommand> simulation,
+                                                      ActorRef<Aggregator.AggregatorEvent> aggregator,
+                                                      TickScheduler tickScheduler,
+                                                      IndividualProps props,
+                                                      ContactNetwork network,
+                                                      SplittableRandom random,
+                                                      int firstId,
+                                                      int cohortSize) {
+        return Behaviors.setup(context -> new CohortBehavior(context, simulation, aggregator, tickScheduler, null,
+                props, network, random, firstId, cohortSize));
+    }
+
+    /**
+     * Creates a Cohort actor as a sharded entity. Events received before the Setup event are
+     * stashed and handled once the Cohort actor has been set up. The contact network of the
+     * simulation is generated on every node from the seed in the props, rather than being sent
+     * around the cluster, the Cohort actor is set up once the network has been generated.
+     *
+     * @param entityId the id of the entity, see entityId
+     * @param shard    the shard of the entity, which passivates it once its simulation has stopped
+     * @return the behavior of the entity
+     */
+    public static Behavior<Cohort.CohortEvent> createEntity(String entityId,
+                                                            ActorRef<ClusterSharding.ShardCommand> shard) {
+        int separator = entityId.lastIndexOf('-');
+        String simulationId = entityId.substring(0, separator);
+        int cohort = Integer.parseInt(entityId.substring(separator + 1));
+
+        return Behaviors.setup(context -> {
+            int maxStashed = context.getSystem().settings().config().getInt("simulation.sharding.max-stashed");
+
+            return Behaviors.withStash(maxStashed, stash -> awaitSetup(context, stash, shard, simulationId, cohort,
+                    false, null));
+        });
+    }
+
+    /**
+     * Waits for the Setup event, stashing further events. A Cohort actor which receives any other
+     * event first, e.g. as it has been moved to another node, looks up its Simulation actor via
+     * the receptionist and asks it for the Setup event. If the Simulation actor isn't found within
+     * simulation.sharding.setup-timeout, the simulation has stopped while events for the Cohort
+     * actor were still on their way, so it's passivated and the stashed events are dropped.
+     *
+     * @param subscribed whether the Simulation actor is being looked up
+     * @param simulation the Simulation actor which has been asked for the Setup event, if any
+     */
+    private static Behavior<Cohort.CohortEvent> awaitSetup(ActorContext<Cohort.CohortEvent> context,
+                                                           StashBuffer<Cohort.CohortEvent> stash,
+                                                           ActorRef<ClusterSharding.ShardCommand> shard,
+                                                           String simulationId,
+                                                           int cohort,
+                                                           boolean subscribed,
+                                                           ActorRef<Simulation.SimulationCommand> simulation) {
+        return Behaviors.receive(Cohort.CohortEvent.class)
+                .onMessage(Cohort.Setup.class, setup -> generateNetwork(context, stash, shard, setup))
+                .onMessage(SimulationFound.class, found -> {
+                    if (simulation != null || found.simulations.isEmpty()) return Behaviors.same();
+
+                    ActorRef<Simulation.SimulationCommand> foundSimulation = found.simulations.iterator().next();
+                    foundSimulation.tell(new Simulation.CohortSetupRequested(cohort));
+
+                    return awaitSetup(context, stash, shard, simulationId, cohort, true, foundSimulation);
+                })
+                .onMessage(SetupTimedOut.class, timedOut -> {
+                    if (simulation != null) return Behaviors.same();
+
+                    context.getLog().warn("Simulation {} hasn't been found, dropping {} events", simulationId,
+                            stash.size());
+                    return passivate(context, shard);
+                })
+                .onMessage(Cohort.Stop.class, stop -> passivate(context, shard))
+                .onMessage(Cohort.HandOff.class, handOff -> Behaviors.stopped())
+                .onMessage(Cohort.CohortEvent.class, event -> {
+                    if (!stash(context, stash, event, simulation, cohort)) return passivate(context, shard);
+
+                    if (subscribed) return Behaviors.same();
+
+                    ServiceKey<Simulation.SimulationCommand> key = Simulation.serviceKey(simulationId);
+                    context.getSystem().receptionist().tell(Receptionist.subscribe(key,
+                            context.messageAdapter(Receptionist.Listing.class,
+                                    listing -> new SimulationFound(listing.getServiceInstances(key)))));
+                    context.scheduleOnce(context.getSystem().settings().config()
+                                    .getDuration("simulation.sharding.setup-timeout"),
+                            context.getSelf(), SetupTimedOut.INSTANCE);
+
+                    return awaitSetup(context, stash, shard, simulationId, cohort, true, simulation);
+                })
+                .build();
+    }
+
+    /**
+     * Waits for the contact network of the simulation, stashing further events. The network is
+     * released if the Cohort actor is stopped in the meantime, a hand off waits for the Cohort
+     * actor to be set up, so its state isn't lost.
+     */
+    private static Behavior<Cohort.CohortEvent> generateNetwork(ActorContext<Cohort.CohortEvent> context,
+                                                                StashBuffer<Cohort.CohortEvent> stash,
+                                                                ActorRef<ClusterSharding.ShardCommand> shard,
+                                                                Setup setup) {
+        ContactNetworks networks = ContactNetworks.get(context.getSystem());
+        context.pipeToSelf(networks.acquire(setup.getProps()), NetworkGenerated::new);
+
+        int cohort = (setup.getFirstId() - 1) / setup.getCohortSize();
+
+        return Behaviors.receive(Cohort.CohortEvent.class)
+                .onMessage(NetworkGenerated.class, generated -> {
+                    if (generated.failure == null) {
+                        return stash.unstashAll(setUp(context, shard, setup, generated.network));
+                    }
+
+                    context.getLog().error("Generating the contact network failed", generated.failure);
+                    networks.release(setup.getProps());
+                    return passivate(context, shard);
+                })
+                .onMessage(Cohort.Stop.class, stop -> {
+                    networks.release(setup.getProps());
+                    return passivate(context, shard);
+                })
+                .onMessage(SimulationFound.class, found -> Behaviors.same())
+                .onMessage(SetupTimedOut.class, timedOut -> Behaviors.same())
+                .onMessage(Cohort.CohortEvent.class, event -> {
+                    if (stash(context, stash, event, setup.getSimulation(), cohort)) return Behaviors.same();
+
+                    networks.release(setup.getProps());
+                    return passivate(context, shard);
+                })
+                .build();
+    }
+
+    /**
+     * Stashes an event until the Cohort actor has been set up. If the stash is full, the Cohort
+     * actor can't catch up anymore, so it fails fast by stopping its simulation instead.
+     *
+     * @param simulation the Simulation actor, null if it isn't known yet
+     * @param cohort     the index of the Cohort actor within the simulation
+     * @return whether the event has been stashed, otherwise the Cohort actor is to be passivated
+     */
+    private static boolean stash(ActorContext<Cohort.CohortEvent> context,
+                                 StashBuffer<Cohort.CohortEvent> stash,
+                                 Cohort.CohortEvent event,
+                                 ActorRef<Simulation.SimulationCommand> simulation,
+                                 int cohort) {
+        if (!stash.isFull()) {
+            stash.stash(event);
+            return true;
+        }
+
+        context.getLog().error("Too many events have arrived before the Cohort actor has been set up");
+        if (simulation != null) simulation.tell(new Simulation.CohortLost(cohort));
+
+        return false;
+    }
+
+    /**
+     * Asks the shard to passivate the Cohort actor, rather than stopping it right away, so sharding
+     * doesn't start it again for events which are already on their way. The events arriving until
+     * sharding tells the Cohort actor to hand off, which stops it without handing off any state,
+     * are dropped.
+     *
+     * @param shard the shard of the Cohort actor
+     * @return the behavior of the Cohort actor while it's being passivated
+     */
+    private static Behavior<Cohort.CohortEvent> passivate(ActorContext<Cohort.CohortEvent> context,
+                                                          ActorRef<ClusterSharding.ShardCommand> shard) {
+        shard.tell(new ClusterSharding.Passivate<>(context.getSelf()));
+
+        return Behaviors.receive(Cohort.CohortEvent.class)
+                .onMessage(Cohort.HandOff.class, handOff -> Behaviors.stopped())
+                .onMessage(Cohort.CohortEvent.class, event -> Behaviors.same())
+                .build();
+    }
+
+    private static Behavior<Cohort.CohortEvent> setUp(ActorContext<Cohort.CohortEvent> context,
+                                                      ActorRef<ClusterSharding.ShardCommand> shard,
+                                                      Setup setup,
+                                                      ContactNetwork network) {
+        ClusterSharding sharding = ClusterSharding.get(context.getSystem());
+        String simulationId = setup.getSimulation().path().name();
+
+        List<RecipientRef<Cohort.CohortEvent>> cohorts = new ArrayList<>();
+        for (int cohort = 0; cohort < setup.getNumberOfCohorts(); cohort++) {
+            cohorts.add(sharding.entityRefFor(ENTITY_TYPE_KEY, entityId(simulationId, cohort)));
+        }
+
+        CohortBehavior behavior = new CohortBehavior(context,
+                setup.getSimulation(),
+                setup.getAggregator(),
+                TickSchedulers.get(context.getSystem()).acquire(simulationId),
+                shard,
+                setup.getProps(),
+                network,
+                new SplittableRandom(setup.getSeed()),
+                setup.getFirstId(),
+                setup.getCohortSize());
+        behavior.setCohorts(new Cohorts(cohorts));
+
+        if (setup.getGroups() != null) behavior.restore(setup.getGroups(), setup.getNumberOfInteractions());
+
+        int cohort = (setup.getFirstId() - 1) / setup.getCohortSize();
+        setup.getSimulation().tell(new Simulation.CohortSetUp(cohort));
+
+        return behavior;
+    }
+
+    /**
+     * @param simulationId the id of the simulation
+     * @param cohort       the index of the Cohort actor within the simulation
+     * @return the id of the sharded entity
+     */
+    public static String entityId(String simulationId, int cohort) {
+        return simulationId + "-" + cohort;
+    }
+
+    /**
+     * @param system the actor system
+     * @return whether the actor system is part of a cluster, so Cohort actors can be sharded
+     */
+    public static boolean isClustered(ActorSystem<?> system) {
+        return "cluster".equals(system.settings().config().getString("akka.actor.provider"));
+    }
+
+    /**
+     * Registers Cohort actors as sharded entities on this node. Entities which are moved to
+     * another node are told to hand off their state, entities of stopped simulations passivate
+     * themselves.
+     *
+     * @param system the actor system
+     */
+    public static void initSharding(ActorSystem<?> system) {
+        ClusterSharding.get(system).init(Entity.of(ENTITY_TYPE_KEY,
+                        entityContext -> createEntity(entityContext.getEntityId(), entityContext.getShard()))
+                .withStopMessage(Cohort.HandOff.INSTANCE));
+    }
+
+    public static class CohortBehavior extends AbstractBehavior<Cohort.CohortEvent> {
+
+        private final ActorRef<Simulation.SimulationCommand> simulation;
+        private final ActorRef<Aggregator.AggregatorEvent> aggregator;
+        private final TickScheduler tickScheduler; // delays interactions
+        // whether the TickScheduler and the network are shared with the other sharded Cohort actors on this node
+        private final boolean sharded;
+        private final ActorRef<ClusterSharding.ShardCommand> shard; // null unless sharded
+        private final IndividualProps props;
+        private final ContactNetwork network; // chooses the interaction partners of the individuals
+        private final int firstId; // the id of the first individual of this Cohort actor
+        private final int cohortSize; // how many individuals every Cohort actor covers
+
+        // the state of the individuals of this Cohort actor, indexed by id - firstId
+        private final byte[] groups;
+        private final int[] numberOfInteractions;
+
+        private final SplittableRandom random; // the Cohort actors own stream of random numbers
+        private final int[] contacts = new int[ContactWindow.MAX_NUMBER_OF_CONTACTS];
+
+        // the individuals exposed or infected while handling the current event
+        private int[] exposedIds = new int[16];
+        private int numberOfExposed;
+        private int[] infectedIds = new int[16];
+        private int numberOfInfected;
+
+        private List<RecipientRef<Cohort.CohortEvent>> cohorts;
+        private InteractionBatch[] batches; // outgoing interactions, indexed like cohorts
+
+        private CohortBehavior(ActorContext<Cohort.CohortEvent> context,
+                               ActorRef<Simulation.SimulationCommand> simulation,
+                               ActorRef<Aggregator.AggregatorEvent> aggregator,
+                               TickScheduler tickScheduler,
+                               ActorRef<ClusterSharding.ShardCommand> shard,
+                               IndividualProps props,
+                               ContactNetwork network,
+                               SplittableRandom random,
+                               int firstId,
+                               int cohortSize) {
+            super(context);
+            this.simulation = simulation;
+            this.aggregator = aggregator;
+            this.tickScheduler = tickScheduler;
+            this.sharded = shard != null;
+            this.shard = shard;
+            this.props = props;
+            this.network = network;
+            this.random = random;
+            this.firstId = firstId;
+            this.cohortSize = cohortSize;
+
+            int numberOfIndividuals = Math.min(cohortSize, props.getNumberOfPeople() - firstId + 1);
+            this.groups = new byte[numberOfIndividuals];
+            this.numberOfInteractions = new int[numberOfIndividuals];
+            Arrays.fill(groups, (byte) Group.SUSCEPTIBLE.ordinal());
+        }
+
+        @Override
+        public Receive<Cohort.CohortEvent> createReceive() {
+            ReceiveBuilder<Cohort.CohortEvent> builder = newReceiveBuilder();
+
+            builder.onMessage(Cohort.Cohorts.class, this::setCohorts);
+            builder.onMessage(Cohort.Interactions.class, this::interact);
+            builder.onMessage(Cohort.Infected.class, this::infect);
+            builder.onMessage(Cohort.Progressed.class, this::progress);
+            builder.onMessage(Cohort.Throttle.class, this::throttle);
+            builder.onMessage(Cohort.Stop.class, stop -> stop());
+            builder.onMessage(Cohort.HandOff.class, handOff -> handOff());
+            // sent again if the Cohort actor has asked for it while its first Setup was still on its way
+            builder.onMessage(Cohort.Setup.class, setup -> Behaviors.same());
+            builder.onMessage(SimulationFound.class, found -> Behaviors.same());
+            builder.onMessage(SetupTimedOut.class, timedOut -> Behaviors.same());
+            builder.onSignal(PostStop.class, signal -> stopped());
+
+            return builder.build();
+        }
+
+        /**
+         * Cohorts event handler
+         * Keeps the actor refs of the simulations Cohort actors so interactions can be sent to
+         * the Cohort actor owning the individual interacted with.
+         *
+         * @param event the received event
+         * @return
+         */
+        private Behavior<CohortEvent> setCohorts(Cohorts event) {
+            this.cohorts = event.getCohorts();
+            this.batches = new InteractionBatch[cohorts.size()];
+            return Behaviors.same();
+        }
+
+        /**
+         * Interactions event handler
+         * Handles a batch of interactions the same way Individual actors handle single
+         * interactions. Every interaction with an infected individual has a chance to expose
+         * the individual interacted with, every interaction has a chance to trigger further
+         * interactions with other individuals, unless the individual interacted with has recovered.
+         *
+         * @param event the received event
+         * @return
+         */
+        private Behavior<CohortEvent> interact(Interactions event) {
+            int[] individuals = event.getIndividuals();
+            int[] interactedWith = event.getInteractedWith();
+            boolean[] infected = event.getInfected();
+
+            for (int i = 0; i < event.getSize(); i++) {
+                int index = individuals[i] - firstId;
+
+                numberOfInteractions[index]++;
+
+                if (infected[i] && random.nextInt(100) < props.getProbabilityOfInfection()) {
+                    setExposed(index, interactedWith[i]);
+                }
+
+                if (groups[index] != Group.RECOVERED.ordinal() && random.nextInt(10) < 4) {
+                    queryIndividuals(individuals[i]);
+                }
+            }
+
+            sendInteractions();
+            scheduleProgress();
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Infected event handler
+         * Handles requests to force individuals to change their group to Infected, skipping the
+         * incubation period. The individuals group is updated and further interactions are
+         * triggered (in any case, not by chance).
+         *
+         * @param event the received event
+         * @return
+         */
+        private Behavior<CohortEvent> infect(Infected event) {
+            for (int id : event.getIds()) {
+                int index = id - firstId;
+
+                numberOfInteractions[index]++;
+
+                if (groups[index] == Group.SUSCEPTIBLE.ordinal()) {
+                    reportNewInfection(index, 0);
+                    setInfected(index);
+                }
+
+                queryIndividuals(id);
+            }
+
+            sendInteractions();
+            scheduleProgress();
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Progressed event handler
+         * Exposed individuals become Infected and trigger further interactions (in any case, not
+         * by chance), Infected individuals recover. Recoveries are reported to the Aggregator
+         * actor in bulk.
+         *
+         * @param event the received event
+         * @return
+         */
+        private Behavior<CohortEvent> progress(Progressed event) {
+            int numberOfRecovered = 0;
+
+            for (int id : event.getIds()) {
+                int index = id - firstId;
+
+                if (groups[index] == Group.EXPOSED.ordinal()) {
+                    setInfected(index);
+                    queryIndividuals(id);
+                } else if (groups[index] == Group.INFECTED.ordinal()) {
+                    groups[index] = (byte) Group.RECOVERED.ordinal();
+                    numberOfRecovered++;
+                }
+            }
+
+            if (numberOfRecovered > 0) aggregator.tell(new Aggregator.Recovered(numberOfRecovered));
+
+            sendInteractions();
+            scheduleProgress();
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Throttle event handler
+         * Pauses or resumes the TickScheduler delivering the interactions and progress of the
+         * Cohort actor, shared with the other Cohort actors of the simulation on this node.
+         *
+         * @param event the received event
+         * @return
+         */
+        private Behavior<CohortEvent> throttle(Throttle event) {
+            if (event == Throttle.PAUSE) tickScheduler.pause();
+            else tickScheduler.resume();
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Stop event handler
+         * Stops delivering interactions and stops the Cohort actor. A sharded Cohort actor releases
+         * the shared TickScheduler and network and is passivated instead, its state is dropped.
+         *
+         * @return
+         */
+        private Behavior<CohortEvent> stop() {
+            if (!sharded) {
+                tickScheduler.cancel();
+                return Behaviors.stopped();
+            }
+
+            stopped();
+            return passivate(getContext(), shard);
+        }
+
+        /**
+         * HandOff event handler
+         * Hands the state of the individuals to the Simulation actor, which sets up the Cohort
+         * actor with it again wherever it's started next, and stops the Cohort actor.
+         *
+         * @return
+         */
+        private Behavior<CohortEvent> handOff() {
+            simulation.tell(new Simulation.CohortHandedOff((firstId - 1) / cohortSize, groups, numberOfInteractions));
+            return Behaviors.stopped();
+        }
+
+        /**
+         * Takes over the state of the individuals handed off by a previous incarnation of the
+         * Cohort actor. The progress scheduled by that incarnation is lost, so Exposed and
+         * Infected individuals progress after a full incubation or infectious period again.
+         *
+         * @param groups               the groups of the individuals
+         * @param numberOfInteractions the numbers of interactions of the individuals
+         */
+        private void restore(byte[] groups, int[] numberOfInteractions) {
+            System.arraycopy(groups, 0, this.groups, 0, this.groups.length);
+            System.arraycopy(numberOfInteractions, 0, this.numberOfInteractions, 0, this.numberOfInteractions.length);
+
+            for (int index = 0; index < groups.length; index++) {
+                if (groups[index] == Group.INFECTED.ordinal()) {
+                    setInfected(index);
+                } else if (groups[index] == Group.EXPOSED.ordinal()) {
+                    if (numberOfExposed == exposedIds.length) {
+                        exposedIds = Arrays.copyOf(exposedIds, numberOfExposed * 2);
+                    }
+                    exposedIds[numberOfExposed++] = firstId + index;
+                }
+            }
+
+            scheduleProgress();
+        }
+
+        /**
+         * PostStop signal handler
+         * Releases the shared TickScheduler and network once the Cohort actor has been moved to
+         * another node, a Cohort actor stopped with its simulation releases them right away.
+         *
+         * @return
+         */
+        private Behavior<CohortEvent> stopped() {
+            if (!sharded) return Behaviors.same();
+
+            TickSchedulers.get(getContext().getSystem()).release(simulation.path().name());
+            ContactNetworks.get(getContext().getSystem()).release(props);
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Sets the individuals group to Exposed and reports the infection if the individual
+         * hasn't been infected yet.
+         *
+         * @param index the index of the individual within this Cohort actor
+         * @param from  the id of who infected the individual
+         */
+        private void setExposed(int index, int from) {
+            if (groups[index] != Group.SUSCEPTIBLE.ordinal()) return;
+
+            reportNewInfection(index, from);
+            groups[index] = (byte) Group.EXPOSED.ordinal();
+
+            if (numberOfExposed == exposedIds.length) exposedIds = Arrays.copyOf(exposedIds, numberOfExposed * 2);
+            exposedIds[numberOfExposed++] = firstId + index;
+        }
+
+        /**
+         * Sets the individuals group to Infected, it recovers after the infectious period.
+         *
+         * @param index the index of the individual within this Cohort actor
+         */
+        private void setInfected(int index) {
+            groups[index] = (byte) Group.INFECTED.ordinal();
+
+            if (numberOfInfected == infectedIds.length) infectedIds = Arrays.copyOf(infectedIds, numberOfInfected * 2);
+            infectedIds[numberOfInfected++] = firstId + index;
+        }
+
+        /**
+         * Informs the Aggregator actor that an individual has been infected.
+         *
+         * @param index the index of the individual within this Cohort actor
+         * @param from  the id of who infected the individual, 0 for the Simulation actor
+         */
+        private void reportNewInfection(int index, int from) {
+            aggregator.tell(new Aggregator.NewInfected(
+                    from,
+                    firstId + index,
+                    numberOfInteractions[index]
+            ));
+        }
+
+        /**
+         * Schedules a single Progressed event for the individuals exposed while handling the
+         * current event and another one for the individuals infected.
+         */
+        private void scheduleProgress() {
+            if (numberOfExposed > 0) {
+                tickScheduler.scheduleAfter(getContext().getSelf(),
+                        new Progressed(Arrays.copyOf(exposedIds, numberOfExposed)), props.getIncubationTicks());
+                numberOfExposed = 0;
+            }
+
+            if (numberOfInfected > 0) {
+                tickScheduler.scheduleAfter(getContext().getSelf(),
+                        new Progressed(Arrays.copyOf(infectedIds, numberOfInfected)), props.getInfectiousTicks());
+                numberOfInfected = 0;
+            }
+        }
+
+        /**
+         * Chooses a couple of the supplied individuals contacts as interaction partners and adds the
+         * interactions to the batch of the Cohort actor owning the respective individual.
+         *
+         * @param id the individual interacting with others
+         */
+        private void queryIndividuals(int id) {
+            int numberOfContacts = network.sample(id, random, contacts);
+            boolean infected = groups[id - firstId] == Group.INFECTED.ordinal();
+
+            for (int i = 0; i < numberOfContacts; i++) {
+                int cohort = (contacts[i] - 1) / cohortSize;
+
+                if (batches[cohort] == null) batches[cohort] = new InteractionBatch();
+
+                batches[cohort].add(contacts[i], id, infected);
+            }
+        }
+
+        /**
+         * Schedules every non empty batch of interactions to be sent to the respective
+         * Cohort actor.
+         */
+        private void sendInteractions() {
+            for (int cohort = 0; cohort < batches.length; cohort++) {
+                InteractionBatch batch = batches[cohort];
+
+                if (batch == null || batch.isEmpty()) continue;
+
+                tickScheduler.schedule(cohorts.get(cohort), batch.drain());
+            }
+        }
+    }
+
+    /**
+     * Collects the interactions sent to a single Cohort actor.
+     */
+    private static final class InteractionBatch {
+
+        private int[] individuals = new int[64];
+        private int[] interactedWith = new int[64];
+        private boolean[] infected = new boolean[64];
+        private int size;
+
+        void add(int individual, int interactedWith, boolean infected) {
+            if (size == individuals.length) {
+                this.individuals = Arrays.copyOf(this.individuals, size * 2);
+                this.interactedWith = Arrays.copyOf(this.interactedWith, size * 2);
+                this.infected = Arrays.copyOf(this.infected, size * 2);
+            }
+
+            this.individuals[size] = individual;
+            this.interactedWith[size] = interactedWith;
+            this.infected[size] = infected;
+            size++;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Hands the collected interactions over to a new Interactions event and starts
+         * collecting from scratch.
+         *
+         * @return the collected interactions
+         */
+        Interactions drain() {
+            Interactions interactions = new Interactions(individuals, interactedWith, infected, size);
+
+            this.individuals = new int[individuals.length];
+            this.interactedWith = new int[interactedWith.length];
+            this.infected = new boolean[infected.length];
+            this.size = 0;
+
+            return interactions;
+        }
+    }
+}
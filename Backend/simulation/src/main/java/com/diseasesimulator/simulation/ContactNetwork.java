@@ -0,0 +1,31 @@
+package com.diseasesimulator.simulation;
+
+import java.util.SplittableRandom;
+
+/**
+ * The ContactNetwork interface represents who an individual interacts with. Every time an
+ * individual interacts with others, a couple of interaction partners are sampled from its
+ * contacts. Sampling must not allocate, as it happens on every interaction.
+ */
+public interface ContactNetwork {
+
+    /**
+     * Chooses between 2 and ContactWindow.MAX_NUMBER_OF_CONTACTS interaction partners among the
+     * contacts of the supplied individual.
+     *
+     * @param id       the id of the individual interacting with others
+     * @param random   the source of randomness
+     * @param contacts receives the ids of the chosen interaction partners, needs to fit
+     *                 at least ContactWindow.MAX_NUMBER_OF_CONTACTS ids
+     * @return the number of ids written to contacts
+     */
+    int sample(int id, SplittableRandom random, int[] contacts);
+
+    /**
+     * @param numberOfPeople how many individuals are in the simulation
+     * @return the network choosing interaction partners "near" the id of an individual, see ContactWindow
+     */
+    static ContactNetwork window(int numberOfPeople) {
+        return (id, random, contacts) -> ContactWindow.sample(id, numberOfPeople, random, contacts);
+    }
+}
@@ -0,0 +1,137 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import com.typesafe.config.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * The ContactNetworks extension is used to access the contact networks of simulations. Networks
+ * are generated on the dispatcher simulation.topologies.dispatcher rather than on the threads of
+ * actors, one after another, so there's never more than one network being generated. The actors
+ * of a simulation spread across several places, e.g. sharded Cohort actors on the same node,
+ * share a single network. A network is kept as long as it's used and dropped once the last of
+ * its users has released it, as networks are generated from a seed, a network which isn't kept
+ * anymore is generated again the same way.
+ */
+public class ContactNetworks implements Extension {
+
+    private final Config topologies;
+    private final Executor executor; // generates the networks
+
+    // the networks in use, generated or being generated
+    private final Map<Key, Entry> networks = new HashMap<>();
+
+    private ContactNetworks(ActorSystem<?> system) {
+        this.topologies = system.settings().config().getConfig("simulation.topologies");
+        this.executor = system.dispatchers().lookup(DispatcherSelector.fromConfig("simulation.topologies.dispatcher"));
+    }
+
+    public static ContactNetworks get(ActorSystem<?> system) {
+        return Id.INSTANCE.apply(system);
+    }
+
+    /**
+     * Returns the contact network of a simulation, generating it unless it's in use already.
+     * Every call has to be followed by a call to release with the same props.
+     *
+     * @param props the information about the simulation
+     * @return completes with the network once it has been generated
+     */
+    public CompletionStage<ContactNetwork> acquire(IndividualProps props) {
+        if (props.getTopology() == Topology.WINDOW) {
+            return CompletableFuture.completedFuture(ContactNetwork.window(props.getNumberOfPeople()));
+        }
+
+        Key key = new Key(props.getTopology(), props.getNumberOfPeople(), props.getNetworkSeed());
+
+        synchronized (this) {
+            Entry entry = networks.computeIfAbsent(key, k -> new Entry(CompletableFuture.supplyAsync(() ->
+                    props.getTopology().generate(props.getNumberOfPeople(), props.getNetworkSeed(),
+                            topologies.getConfig(props.getTopology().configPath())), executor)));
+            entry.users++;
+            return entry.network;
+        }
+    }
+
+    /**
+     * Releases the contact network of a simulation, it's dropped once it has been released as
+     * often as it has been acquired.
+     *
+     * @param props the information about the simulation
+     */
+    public void release(IndividualProps props) {
+        if (props.getTopology() == Topology.WINDOW) return;
+
+        Key key = new Key(props.getTopology(), props.getNumberOfPeople(), props.getNetworkSeed());
+
+        synchronized (this) {
+            Entry entry = networks.get(key);
+
+            if (entry != null && --entry.users == 0) networks.remove(key);
+        }
+    }
+
+    /**
+     * A network and how many users have acquired it.
+     */
+    private static final class Entry {
+
+        private final CompletableFuture<ContactNetwork> network;
+        private int users;
+
+        private Entry(CompletableFuture<ContactNetwork> network) {
+            this.network = network;
+        }
+    }
+
+    /**
+     * Identifies a contact network.
+     */
+    private static final class Key {
+
+        private final Topology topology;
+        private final int numberOfPeople;
+        private final long seed;
+
+        private Key(Topology topology, int numberOfPeople, long seed) {
+            this.topology = topology;
+            this.numberOfPeople = numberOfPeople;
+            this.seed = seed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return topology == key.topology && numberOfPeople == key.numberOfPeople && seed == key.seed;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(topology, numberOfPeople, seed);
+        }
+    }
+
+    public static final class Id extends ExtensionId<ContactNetworks> {
+
+        private static final Id INSTANCE = new Id();
+
+        private Id() {
+        }
+
+        @Override
+        public ContactNetworks createExtension(ActorSystem<?> system) {
+            return new ContactNetworks(system);
+        }
+    }
+}
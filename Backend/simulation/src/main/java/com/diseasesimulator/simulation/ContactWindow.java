@@ -0,0 +1,46 @@
+package com.diseasesimulator.simulation;
+
+import java.util.SplittableRandom;
+
+/**
+ * The ContactWindow class chooses the interaction partners of an individual. A couple of
+ * individuals whose ids are "near" the id of the individual are chosen randomly, which
+ * simulates interactions based on one dimensional proximity. The rule is the one Individual
+ * actors follow, so every engine sees the same contacts for the same random numbers.
+ */
+public class ContactWindow {
+
+    public static final int MAX_NUMBER_OF_CONTACTS = 11;
+
+    private ContactWindow() {
+    }
+
+    /**
+     * Chooses between 2 and 11 interaction partners within a range around the supplied id. Like
+     * Individual actors do, the individual itself may be chosen, it then interacts with itself.
+     *
+     * @param id             the id of the individual interacting with others
+     * @param numberOfPeople how many individuals are in the simulation
+     * @param random         the source of randomness
+     * @param contacts       receives the ids of the chosen interaction partners, needs to fit
+     *                       at least MAX_NUMBER_OF_CONTACTS ids
+     * @return the number of ids written to contacts
+     */
+    public static int sample(int id, int numberOfPeople, SplittableRandom random, int[] contacts) {
+        int numberOfIndividuals = random.nextInt(2, MAX_NUMBER_OF_CONTACTS + 1);
+
+        int min = id - numberOfIndividuals / 2;
+        int max = id + numberOfIndividuals / 2;
+
+        if (min < 1) min = 1;
+        if (max > numberOfPeople) max = numberOfPeople;
+
+        if (min >= max) return 0;
+
+        for (int i = 0; i < numberOfIndividuals; i++) {
+            contacts[i] = random.nextInt(min, max);
+        }
+
+        return numberOfIndividuals;
+    }
+}
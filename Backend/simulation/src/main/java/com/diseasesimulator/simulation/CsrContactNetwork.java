@@ -0,0 +1,106 @@
+package com.diseasesimulator.simulation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The CsrContactNetwork class stores an undirected contact graph in compressed sparse row form.
+ * The contacts of the individual with the id i are neighbors[offsets[i - 1]] up to, but
+ * excluding, neighbors[offsets[i]], so a graph takes 4 bytes per individual plus 8 bytes per
+ * edge. Interaction partners are sampled from the contacts of an individual uniformly with
+ * replacement.
+ */
+public class CsrContactNetwork implements ContactNetwork {
+
+    private final int[] offsets; // indexed by id - 1, numberOfPeople + 1 entries
+    private final int[] neighbors; // the ids of the contacts of every individual
+
+    private CsrContactNetwork(int[] offsets, int[] neighbors) {
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+    /**
+     * Builds a network from a list of undirected edges. Self loops are skipped, duplicate edges
+     * are kept and make the contact more likely to be sampled.
+     *
+     * @param numberOfPeople  how many individuals are in the simulation
+     * @param from            the ids of one end of the edges
+     * @param to              the ids of the other end of the edges
+     * @param numberOfEdges   how many entries of from and to are edges
+     * @return the network
+     */
+    public static CsrContactNetwork fromEdges(int numberOfPeople, int[] from, int[] to, int numberOfEdges) {
+        int[] offsets = new int[numberOfPeople + 1];
+
+        for (int i = 0; i < numberOfEdges; i++) {
+            if (from[i] == to[i]) continue;
+
+            offsets[from[i]]++;
+            offsets[to[i]]++;
+        }
+
+        for (int i = 0; i < numberOfPeople; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] neighbors = new int[offsets[numberOfPeople]];
+        int[] next = new int[numberOfPeople]; // the next free position per individual, indexed by id - 1
+        System.arraycopy(offsets, 0, next, 0, numberOfPeople);
+
+        for (int i = 0; i < numberOfEdges; i++) {
+            if (from[i] == to[i]) continue;
+
+            neighbors[next[from[i] - 1]++] = to[i];
+            neighbors[next[to[i] - 1]++] = from[i];
+        }
+
+        return new CsrContactNetwork(offsets, neighbors);
+    }
+
+    @Override
+    public int sample(int id, SplittableRandom random, int[] contacts) {
+        int start = offsets[id - 1];
+        int end = offsets[id];
+
+        if (start == end) return 0;
+
+        int numberOfContacts = random.nextInt(2, ContactWindow.MAX_NUMBER_OF_CONTACTS + 1);
+
+        for (int i = 0; i < numberOfContacts; i++) {
+            contacts[i] = neighbors[random.nextInt(start, end)];
+        }
+
+        return numberOfContacts;
+    }
+
+    /**
+     * @return how many individuals are in the network
+     */
+    public int getNumberOfPeople() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return how many contacts the individuals have in total, every edge counts twice
+     */
+    public int getNumberOfContacts() {
+        return neighbors.length;
+    }
+
+    /**
+     * @param id the id of an individual
+     * @return how many contacts the individual has
+     */
+    public int getNumberOfContacts(int id) {
+        return offsets[id] - offsets[id - 1];
+    }
+
+    /**
+     * @param id the id of an individual
+     * @return the ids of the contacts of the individual
+     */
+    public int[] getContacts(int id) {
+        return Arrays.copyOfRange(neighbors, offsets[id - 1], offsets[id]);
+    }
+}
@@ -0,0 +1,108 @@
+package com.diseasesimulator.simulation;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The DirectStreams class is used to access the infections of simulations published by the
+ * DIRECT InfectionSink, so they can be streamed via HTTP without going through RabbitMQ. A
+ * simulation can be streamed once it has been admitted, its infections are streamed as soon as
+ * it has been started, batches published before anyone streams it are kept up to
+ * simulation.aggregator.direct-buffer-size. Once the Aggregator actor of a simulation has stopped,
+ * it can't be streamed anymore.
+ */
+public class DirectStreams {
+
+    private final Map<String, DirectStream> streams = new ConcurrentHashMap<>();
+
+    private static final class InstanceHolder {
+        static final DirectStreams INSTANCE = new DirectStreams();
+    }
+
+    private DirectStreams() {
+    }
+
+    public static DirectStreams getDirectStreams() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Makes an admitted simulation available for streaming.
+     *
+     * @param simulationId the id of the simulation
+     * @param wireFormat   the format infections are published in
+     */
+    public void admitted(String simulationId, WireFormat wireFormat) {
+        streams.putIfAbsent(simulationId, new DirectStream(wireFormat));
+    }
+
+    /**
+     * Called by the DIRECT InfectionSink once the simulation has been started.
+     *
+     * @param simulationId the id of the simulation
+     * @param batches      the published batches of infections
+     */
+    void started(String simulationId, Source<ByteString, NotUsed> batches) {
+        DirectStream stream = streams.get(simulationId);
+
+        if (stream != null) stream.batches.complete(batches);
+    }
+
+    /**
+     * Called by the DIRECT InfectionSink once the simulation has been stopped, either by the
+     * stream or by the Aggregator actor, whichever comes first.
+     *
+     * @param simulationId the id of the simulation
+     */
+    void stopped(String simulationId) {
+        streams.remove(simulationId);
+    }
+
+    /**
+     * @param simulationId the id of the simulation
+     * @return the stream of the simulation, nothing if the simulation hasn't been admitted or
+     * has been stopped
+     */
+    public Optional<DirectStream> get(String simulationId) {
+        return Optional.ofNullable(streams.get(simulationId));
+    }
+
+    /**
+     * The infections of a single simulation. Batches of binary records are streamed as they are,
+     * batches of JSON infections are streamed as one JSON array per line.
+     */
+    public static final class DirectStream {
+
+        private static final ByteString NEWLINE = ByteString.fromString("\n");
+
+        private final WireFormat wireFormat;
+        private final CompletableFuture<Source<ByteString, NotUsed>> batches = new CompletableFuture<>();
+
+        private DirectStream(WireFormat wireFormat) {
+            this.wireFormat = wireFormat;
+        }
+
+        /**
+         * @return the content type of the streamed infections
+         */
+        public String getContentType() {
+            return wireFormat == WireFormat.JSON ? "application/x-ndjson" : wireFormat.getContentType();
+        }
+
+        /**
+         * @return the infections of the simulation, starting with the infections published once
+         * subscribed
+         */
+        public Source<ByteString, NotUsed> getInfections() {
+            return Source.completionStageSource(batches)
+                    .map(batch -> wireFormat == WireFormat.JSON ? batch.concat(NEWLINE) : batch)
+                    .mapMaterializedValue(notUsed -> NotUsed.getInstance());
+        }
+    }
+}
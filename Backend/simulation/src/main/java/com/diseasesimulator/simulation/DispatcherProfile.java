@@ -0,0 +1,96 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import com.typesafe.config.Config;
+
+/**
+ * The DispatcherProfile class represents which dispatchers the actors of a simulation run on.
+ * Profiles are configured in simulation.dispatcher-profiles, every profile optionally names the
+ * dispatcher of the Simulation actor, of the Individual or Cohort actors and of the Aggregator
+ * actor along with its stream. Actors without a dispatcher run on the dispatcher of their parent,
+ * the Simulation actor runs on the dispatcher of its tier then. The props of the actors select
+ * the InstrumentedMailbox for their kind of actor as well.
+ */
+public class DispatcherProfile {
+
+    private final String name;
+    private final String simulation; // the config path of the dispatcher, null if not configured
+    private final String individual;
+    private final String aggregator;
+
+    private DispatcherProfile(String name, Config config) {
+        this.name = name;
+        this.simulation = config.hasPath("simulation") ? config.getString("simulation") : null;
+        this.individual = config.hasPath("individual") ? config.getString("individual") : null;
+        this.aggregator = config.hasPath("aggregator") ? config.getString("aggregator") : null;
+    }
+
+    /**
+     * Loads a profile from simulation.dispatcher-profiles. Unknown or missing profiles fall back
+     * to simulation.default-dispatcher-profile.
+     *
+     * @param system the actor system
+     * @param name   the name of the profile, may be null
+     * @return the profile
+     */
+    public static DispatcherProfile load(ActorSystem<?> system, String name) {
+        Config config = system.settings().config().getConfig("simulation");
+        Config profiles = config.getConfig("dispatcher-profiles");
+
+        if (!isConfigured(system, name)) name = config.getString("default-dispatcher-profile");
+
+        return new DispatcherProfile(name, profiles.getConfig(name));
+    }
+
+    /**
+     * Names are matched against the profiles themselves rather than used as config paths, so
+     * names such as "" or "throughput.simulation" are unknown.
+     *
+     * @param system the actor system
+     * @param name   the name of the profile, may be null
+     * @return whether a profile with the name is configured in simulation.dispatcher-profiles
+     */
+    public static boolean isConfigured(ActorSystem<?> system, String name) {
+        return name != null && system.settings().config()
+                .getConfig("simulation.dispatcher-profiles").root().containsKey(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the config path of the dispatcher of the Simulation actor, null if the dispatcher of
+     * the simulations tier is to be used
+     */
+    public String getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * @return the config path of the dispatcher of the Aggregator actor and its stream, null if
+     * the dispatcher of the Simulation actor is to be used
+     */
+    public String getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * @param kind the kind of actor, either individual or cohort
+     * @return the props of the Individual or Cohort actors
+     */
+    public Props individualProps(String kind) {
+        return props(individual, kind);
+    }
+
+    public Props aggregatorProps() {
+        return props(aggregator, "aggregator");
+    }
+
+    private static Props props(String dispatcher, String kind) {
+        Props mailbox = InstrumentedMailbox.selector(kind);
+
+        return dispatcher == null ? mailbox.withDispatcherSameAsParent() : mailbox.withDispatcherFromConfig(dispatcher);
+    }
+}
@@ -0,0 +1,27 @@
+package com.diseasesimulator.simulation;
+
+/**
+ * The Engine enum represents how the individuals of a simulation are simulated.
+ * Either every individual is an Individual actor or contiguous ranges of individuals
+ * are owned by Cohort actors, which allows for much larger simulations. Sharded spreads the
+ * Cohort actors across the nodes of a cluster and falls back to Cohort without a cluster,
+ * including the maximum number of people Cohort simulates.
+ * Parallel simulates the individuals without actors in discrete steps, paced like ticks and
+ * computed on a dispatcher of their own.
+ */
+public enum Engine {
+    INDIVIDUAL(2000),
+    COHORT(10000000),
+    SHARDED(100000000),
+    PARALLEL(10000000);
+
+    private final int maxNumberOfPeople; // how many individuals the engine can simulate at most
+
+    Engine(int maxNumberOfPeople) {
+        this.maxNumberOfPeople = maxNumberOfPeople;
+    }
+
+    public int getMaxNumberOfPeople() {
+        return maxNumberOfPeople;
+    }
+}
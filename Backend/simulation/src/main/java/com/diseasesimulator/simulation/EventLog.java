@@ -0,0 +1,219 @@
+package com.diseasesimulator.simulation;
+
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The EventLog class appends the infections of a simulation to a file, so finished simulations
+ * can be read back without running them again. Infections are written as the same fixed-width
+ * records as the binary wire format uses, through a memory-mapped segment of the file which is
+ * moved forward once it's full. While the simulation is running the file has the suffix .part,
+ * once the log is closed the file is trimmed to the written records and renamed. Closed logs are
+ * kept up to a total of simulation.event-log.max-size, the oldest ones are deleted first. The files
+ * of running simulations count toward the size as well. Files with the suffix .part left behind by
+ * a crashed service are deleted once the service starts again, or once their id is logged again.
+ */
+public class EventLog implements AutoCloseable {
+
+    private static final String SUFFIX = ".log";
+    private static final String PART_SUFFIX = ".log.part";
+
+    private final Path path; // the file the log is renamed to once closed
+    private final Path partPath; // the file the log is written to
+    private final FileChannel channel;
+    private final long segmentSize; // how many bytes are mapped at once
+    private final long maxSize; // how many bytes the closed logs in the directory take up at most
+
+    private MappedByteBuffer segment;
+    private long size; // how many bytes have been written
+
+    private EventLog(Path path, Path partPath, FileChannel channel, long segmentSize, long maxSize) {
+        this.path = path;
+        this.partPath = partPath;
+        this.channel = channel;
+        this.segmentSize = segmentSize - segmentSize % WireFormat.RECORD_SIZE;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Creates the log of a simulation in simulation.event-log.directory. A file left behind by a
+     * previous run of the simulation which hasn't been closed is replaced, as only one simulation
+     * with the id runs at a time.
+     *
+     * @param config       the config of the actor system
+     * @param simulationId the id of the simulation
+     * @return the created log
+     * @throws IOException if the file can't be created
+     */
+    public static EventLog create(Config config, String simulationId) throws IOException {
+        Path directory = directoryOf(config);
+        Files.createDirectories(directory);
+
+        Path partPath = directory.resolve(simulationId + PART_SUFFIX);
+        Files.deleteIfExists(partPath);
+        FileChannel channel = FileChannel.open(partPath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        return new EventLog(directory.resolve(simulationId + SUFFIX), partPath, channel,
+                config.getBytes("simulation.event-log.segment-size"),
+                config.getBytes("simulation.event-log.max-size"));
+    }
+
+    /**
+     * @param config       the config of the actor system
+     * @param simulationId the id of the simulation
+     * @return the file of the closed log of the simulation, nothing if the simulation is still
+     * running or hasn't been logged
+     */
+    public static Optional<Path> find(Config config, String simulationId) {
+        if (!simulationId.matches("[A-Za-z0-9-]+")) return Optional.empty();
+
+        Path path = directoryOf(config).resolve(simulationId + SUFFIX);
+
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    /**
+     * Deletes the files of logs which haven't been closed, as they've been left behind by a
+     * previous run of the service, and collects the ids of the simulations with a closed log.
+     * Only called on startup, before any simulation is logged.
+     *
+     * @param config the config of the actor system
+     * @return the ids of the simulations whose logs are retained
+     * @throws IOException if the directory can't be listed or a file can't be deleted
+     */
+    public static Set<String> deleteUnclosed(Config config) throws IOException {
+        Path directory = directoryOf(config);
+        Set<String> logged = new HashSet<>();
+
+        if (!Files.isDirectory(directory)) return logged;
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+
+            if (name.endsWith(PART_SUFFIX)) {
+                Files.deleteIfExists(file);
+            } else if (name.endsWith(SUFFIX)) {
+                logged.add(name.substring(0, name.length() - SUFFIX.length()));
+            }
+        }
+
+        return logged;
+    }
+
+    private static Path directoryOf(Config config) {
+        return Paths.get(config.getString("simulation.event-log.directory"));
+    }
+
+    /**
+     * Appends an infection to the log.
+     *
+     * @param from                 the id of who infected the individual, 0 for the simulation
+     * @param infected             the id of the individual which has been infected
+     * @param numberOfInteractions the number of interactions before infection
+     * @throws IOException if the next segment can't be mapped
+     */
+    public void append(int from, int infected, int numberOfInteractions) throws IOException {
+        if (segment == null || !segment.hasRemaining()) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, size, segmentSize);
+        }
+
+        segment.putInt(from).putInt(infected).putInt(numberOfInteractions);
+        size += WireFormat.RECORD_SIZE;
+    }
+
+    /**
+     * Flushes the written records, trims the file to them and renames it, so it can be read back.
+     *
+     * @throws IOException if the file can't be trimmed or renamed
+     */
+    @Override
+    public void close() throws IOException {
+        if (segment != null) segment.force();
+        segment = null;
+
+        try (channel) {
+            channel.truncate(size);
+        }
+
+        Files.move(partPath, path, StandardCopyOption.ATOMIC_MOVE);
+
+        retain(path.getParent(), maxSize);
+    }
+
+    /**
+     * Closes the log without keeping it, the file is deleted. Failures are ignored, as the log
+     * is only discarded once it has failed already.
+     */
+    public void discard() {
+        segment = null;
+
+        try (channel) {
+            Files.deleteIfExists(partPath);
+        } catch (IOException e) {
+            // the file is left behind
+        }
+    }
+
+    /**
+     * Deletes the oldest closed logs until the remaining ones along with the logs which are still
+     * being written take up at most the supplied number of bytes. Only closed logs are deleted,
+     * logs deleted by another Aggregator actor in the meantime are skipped.
+     *
+     * @param directory the directory of the logs
+     * @param maxSize   how many bytes the logs take up at most
+     * @throws IOException if the directory can't be listed or a log can't be deleted
+     */
+    private static synchronized void retain(Path directory, long maxSize) throws IOException {
+        List<Path> logs;
+        try (Stream<Path> files = Files.list(directory)) {
+            logs = files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)
+                    || file.getFileName().toString().endsWith(PART_SUFFIX)).collect(Collectors.toList());
+        }
+
+        Map<Path, FileTime> modified = new HashMap<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        for (Path log : logs) {
+            try {
+                modified.put(log, Files.getLastModifiedTime(log));
+                sizes.put(log, Files.size(log));
+            } catch (NoSuchFileException e) {
+                // deleted in the meantime
+            }
+        }
+
+        List<Path> newestFirst = new ArrayList<>(sizes.keySet());
+        newestFirst.sort(Comparator.comparing(modified::get, Comparator.reverseOrder()));
+
+        long size = 0;
+        for (Path log : newestFirst) {
+            size += sizes.get(log);
+            if (size > maxSize && log.getFileName().toString().endsWith(SUFFIX)) Files.deleteIfExists(log);
+        }
+    }
+}
@@ -2,9 +2,12 @@ package com.diseasesimulator.simulation;
 
 /**
  * The Group enum represents the group an individual belongs to.
- * An individual is either in the Susceptible or Infected group
+ * An individual starts out Susceptible, becomes Exposed once infected, Infected (and infectious)
+ * after the incubation period and Recovered (and immune) after the infectious period.
  */
 public enum Group {
     SUSCEPTIBLE,
-    INFECTED
+    EXPOSED,
+    INFECTED,
+    RECOVERED
 }
@@ -4,15 +4,18 @@ import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.*;
 
-import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.SplittableRandom;
 
 /**
  * Individual actors interact with each other and form the core of a simulation. Individuals
  * simulate the spread of a disease by interacting with other Individuals nearby and
  * potentially infecting them as well. A chosen number of Individual actors are infected
- * from the very beginning and the disease spreads from there.
+ * from the very beginning and the disease spreads from there. Infected Individuals are Exposed
+ * for the incubation period before they become infectious, and recover after the infectious
+ * period, both periods are delayed via the TickScheduler of the simulation rather than by a
+ * timer per Individual. Recovered Individuals are immune and don't pass interactions on.
  */
 public class Individual {
 
@@ -26,31 +29,50 @@ public class Individual {
      */
     public static abstract class InteractedWith implements Individual.IndividualEvent {
 
-        private final String interactedWith; // who the Individual actor interacted with
+        private final int interactedWith; // the id of who the Individual actor interacted with
 
-        public InteractedWith(String interactedWith) {
+        public InteractedWith(int interactedWith) {
             this.interactedWith = interactedWith;
         }
 
-        public String getInteractedWith() {
+        public int getInteractedWith() {
             return interactedWith;
         }
     }
 
     public static final class InteractedWithSusceptible extends InteractedWith {
 
-        public InteractedWithSusceptible(String interactedWith) {
+        public InteractedWithSusceptible(int interactedWith) {
             super(interactedWith);
         }
     }
 
     public static final class InteractedWithInfected extends InteractedWith {
 
-        public InteractedWithInfected(String interactedWith) {
+        public InteractedWithInfected(int interactedWith) {
             super(interactedWith);
         }
     }
 
+    /**
+     * Occurs once after the Simulation actor has spawned all of its Individual actors.
+     * Contains the actor refs of every Individual actor in the simulation, indexed by id - 1,
+     * so that interaction partners can be resolved locally instead of querying the
+     * Simulation actor on every interaction.
+     */
+    public static final class Neighborhood implements Individual.IndividualEvent {
+
+        private final List<ActorRef<Individual.IndividualEvent>> individuals;
+
+        public Neighborhood(List<ActorRef<Individual.IndividualEvent>> individuals) {
+            this.individuals = individuals;
+        }
+
+        public List<ActorRef<Individual.IndividualEvent>> getIndividuals() {
+            return individuals;
+        }
+    }
+
     /**
      * Occurs when an Individual actor is forced to change its group to Infected.
      * At the beginning of a simulation the Simulation actor infects a specific number
@@ -59,6 +81,13 @@ public class Individual {
     public static final class Infected implements Individual.IndividualEvent {
     }
 
+    /**
+     * Occurs when the incubation or infectious period of an Individual actor is over.
+     */
+    public enum Progressed implements Individual.IndividualEvent {
+        INSTANCE
+    }
+
     /**
      * Occurs as a response by the Simulation actor when it receives a request to
      * query individuals. Contains the requested Individual actors.
@@ -78,8 +107,13 @@ public class Individual {
 
     public static Behavior<Individual.IndividualEvent> create(ActorRef<Simulation.SimulationCommand> simulation,
                                                               ActorRef<Aggregator.AggregatorEvent> aggregator,
-                                                              IndividualProps props) {
-        return Behaviors.setup(context -> new IndividualBehavior(context, simulation, aggregator, props));
+                                                              TickScheduler tickScheduler,
+                                                              IndividualProps props,
+                                                              ContactNetwork network,
+                                                              SplittableRandom random,
+                                                              int id) {
+        return Behaviors.setup(context ->
+                new IndividualBehavior(context, simulation, aggregator, tickScheduler, props, network, random, id));
     }
 
     public static class IndividualBehavior extends AbstractBehavior<Individual.IndividualEvent> {
@@ -88,16 +122,36 @@ public class Individual {
         private Group group = Group.SUSCEPTIBLE;
         private final ActorRef<Simulation.SimulationCommand> simulation;
         private final ActorRef<Aggregator.AggregatorEvent> aggregator;
+        private final TickScheduler tickScheduler; // delays interactions
         private final IndividualProps props;
+        private final ContactNetwork network; // chooses the interaction partners, unless the topology is Window
+        private final SplittableRandom random; // the Individual actors own stream of random numbers
+        private final int[] contacts = new int[ContactWindow.MAX_NUMBER_OF_CONTACTS];
+        private final int id; // the id of the Individual actor within its simulation
+        // the interaction events sent to partners, depending on the Individual actors group
+        private final Individual.InteractedWithSusceptible interactionAsSusceptible;
+        private final Individual.InteractedWithInfected interactionAsInfected;
+        // the Individual actors of the simulation, known once the Neighborhood event is received
+        private List<ActorRef<Individual.IndividualEvent>> neighborhood;
 
         private IndividualBehavior(ActorContext<Individual.IndividualEvent> context,
                                    ActorRef<Simulation.SimulationCommand> simulation,
                                    ActorRef<Aggregator.AggregatorEvent> aggregator,
-                                   IndividualProps props) {
+                                   TickScheduler tickScheduler,
+                                   IndividualProps props,
+                                   ContactNetwork network,
+                                   SplittableRandom random,
+                                   int id) {
             super(context);
             this.simulation = simulation;
             this.aggregator = aggregator;
+            this.tickScheduler = tickScheduler;
             this.props = props;
+            this.network = network;
+            this.random = random;
+            this.id = id;
+            this.interactionAsSusceptible = new Individual.InteractedWithSusceptible(id);
+            this.interactionAsInfected = new Individual.InteractedWithInfected(id);
         }
 
         @Override
@@ -108,17 +162,19 @@ public class Individual {
             builder.onMessage(Individual.InteractedWithInfected.class, this::interactionWithInfected);
 
             builder.onMessage(Individual.QueriedIndividuals.class, this::interactWithIndividuals);
+            builder.onMessage(Individual.Neighborhood.class, this::setNeighborhood);
 
             builder.onMessage(Individual.Infected.class, (event) -> infect());
+            builder.onMessageEquals(Individual.Progressed.INSTANCE, this::progress);
 
             return builder.build();
         }
 
         /**
          * InteractedWithSusceptible event handler
-         * Handles interactions with non infected Individual actors. Every interaction
-         * with a non infected Individual actor has a chance to trigger further
-         * interactions with other individuals.
+         * Handles interactions with non infectious Individual actors. Every interaction
+         * with a non infectious Individual actor has a chance to trigger further
+         * interactions with other individuals, unless the Individual actor has recovered.
          *
          * @param event the received event
          * @return
@@ -126,7 +182,7 @@ public class Individual {
         private Behavior<IndividualEvent> interactionWithSusceptible(IndividualEvent event) {
             numberOfInteractions++;
 
-            if (ThreadLocalRandom.current().nextInt(10) < 4) queryIndividuals();
+            if (group != Group.RECOVERED && random.nextInt(10) < 4) queryIndividuals();
 
             return Behaviors.same();
         }
@@ -134,9 +190,9 @@ public class Individual {
         /**
          * InteractedWithInfected event handler
          * Handles interactions with infected Individual actors. Every interaction with
-         * a infected Individual actor has a chance to infect the Individual actor which
+         * a infected Individual actor has a chance to expose the Individual actor which
          * received the event as well as a chance to trigger further interactions with
-         * other individuals.
+         * other individuals, unless the Individual actor has recovered.
          *
          * @param event the received event
          * @return
@@ -144,11 +200,11 @@ public class Individual {
         private Behavior<IndividualEvent> interactionWithInfected(InteractedWithInfected event) {
             numberOfInteractions++;
 
-            if (ThreadLocalRandom.current().nextInt(100) < props.getProbabilityOfInfection()) {
-                setInfected(event.getInteractedWith());
+            if (random.nextInt(100) < props.getProbabilityOfInfection()) {
+                setExposed(event.getInteractedWith());
             }
 
-            if (ThreadLocalRandom.current().nextInt(10) < 4) queryIndividuals();
+            if (group != Group.RECOVERED && random.nextInt(10) < 4) queryIndividuals();
 
             return Behaviors.same();
         }
@@ -163,66 +219,112 @@ public class Individual {
          * @return
          */
         private Behavior<IndividualEvent> interactWithIndividuals(QueriedIndividuals event) {
-            String interactedWith = getContext()
-                    .getSelf()
-                    .path()
-                    .name();
+            Individual.IndividualEvent individualEvent = newInteraction();
 
             for (ActorRef<Individual.IndividualEvent> individual : event.getIndividuals()) {
-                Individual.IndividualEvent individualEvent = new Individual.InteractedWithSusceptible(interactedWith);
-
-                if (group == Group.INFECTED) individualEvent = new Individual.InteractedWithInfected(interactedWith);
-
-                getContext().scheduleOnce(Duration.ofMillis(2), individual, individualEvent);
+                tickScheduler.schedule(individual, individualEvent);
             }
 
             return Behaviors.same();
         }
 
+        /**
+         * Neighborhood event handler
+         * Keeps the actor refs of the simulations Individual actors so that further interactions
+         * go directly to the chosen Individual actors.
+         *
+         * @param event the received event
+         * @return
+         */
+        private Behavior<IndividualEvent> setNeighborhood(Neighborhood event) {
+            this.neighborhood = event.getIndividuals();
+            return Behaviors.same();
+        }
+
         /**
          * Infected event handler
-         * Handles requests to force the Individual actor to change its group to Infected.
-         * The Individual actors group is updated and further interactions are triggered
-         * (in any case, not by chance).
+         * Handles requests to force the Individual actor to change its group to Infected,
+         * skipping the incubation period. The Individual actors group is updated and further
+         * interactions are triggered (in any case, not by chance).
          *
          * @return
          */
         private Behavior<IndividualEvent> infect() {
             numberOfInteractions++;
-            setInfected(simulation.path().name());
+
+            if (group == Group.SUSCEPTIBLE) {
+                reportNewInfection(0);
+                setInfected();
+            }
+
             queryIndividuals();
             return Behaviors.same();
         }
 
         /**
-         * Sets the Individual actors group to Infected and reports the infection if the
-         * actor hasn't already been infected.
+         * Progressed event handler
+         * Once the incubation period is over, the Individual actor becomes Infected and further
+         * interactions are triggered (in any case, not by chance). Once the infectious period is
+         * over, the Individual actor recovers.
+         *
+         * @return
+         */
+        private Behavior<IndividualEvent> progress() {
+            if (group == Group.EXPOSED) {
+                setInfected();
+                queryIndividuals();
+            } else if (group == Group.INFECTED) {
+                group = Group.RECOVERED;
+                aggregator.tell(new Aggregator.Recovered(1));
+            }
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Sets the Individual actors group to Exposed and reports the infection if the
+         * actor hasn't been infected yet.
          *
-         * @param from who infected the Individual actor
+         * @param from the id of who infected the Individual actor
          */
-        private void setInfected(String from) {
-            if (this.group != Group.INFECTED) reportNewInfection(from);
-            this.group = Group.INFECTED;
+        private void setExposed(int from) {
+            if (group != Group.SUSCEPTIBLE) return;
+
+            reportNewInfection(from);
+            group = Group.EXPOSED;
+            tickScheduler.scheduleAfter(getContext().getSelf(), Individual.Progressed.INSTANCE,
+                    props.getIncubationTicks());
         }
 
         /**
-         * Triggers interactions with other Individual actors by sending a request to the
-         * Simulation actor to query a couple of Individual actors and respond with their actor
-         * refs. Within a range based on the Individual actors name (more specifically the id at the end
-         * of it) a couple of Individual actors which are "near" the Individual actor are chosen to be
-         * requested as interaction partners.
+         * Sets the Individual actors group to Infected, it recovers after the infectious period.
+         */
+        private void setInfected() {
+            group = Group.INFECTED;
+            tickScheduler.scheduleAfter(getContext().getSelf(), Individual.Progressed.INSTANCE,
+                    props.getInfectiousTicks());
+        }
+
+        /**
+         * Triggers interactions with other Individual actors. Within a range based on the
+         * Individual actors id a couple of Individual actors which are "near" the Individual actor
+         * are chosen as interaction partners, unless the simulation has a contact network, in which
+         * case the interaction partners are chosen among the Individual actors contacts. Once the
+         * neighborhood is known the interactions are scheduled right away, otherwise the Simulation
+         * actor is requested to query the chosen Individual actors and respond with their actor
+         * refs.
          */
         private void queryIndividuals() {
-            int numberOfIndividuals = ThreadLocalRandom.current().nextInt(2, 12);
+            if (props.getTopology() != Topology.WINDOW) {
+                queryContacts();
+                return;
+            }
 
-            int[] ids = new int[numberOfIndividuals];
+            int numberOfIndividuals = random.nextInt(2, 12);
 
-            String name = getContext()
-                    .getSelf()
-                    .path()
-                    .name();
+            int[] ids = new int[numberOfIndividuals];
 
-            int id = Integer.parseInt(name.substring(name.lastIndexOf("individual") + "individual".length()));
+            int id = this.id;
 
             int min = id - numberOfIndividuals / 2;
             int max = id + numberOfIndividuals / 2;
@@ -233,26 +335,68 @@ public class Individual {
             for (int i = 0; i < numberOfIndividuals; i++) {
                 if (min >= max) continue;
 
-                ids[i] = ThreadLocalRandom.current().nextInt(min, max);
+                ids[i] = random.nextInt(min, max);
 
                 if (ids[i] == id) {
                     id = id % 2 == 0 ? id - 1 : id + 1;
                 }
             }
 
-            simulation.tell(new Simulation.QueryIndividuals(getContext().getSelf(), ids));
+            if (neighborhood == null) {
+                simulation.tell(new Simulation.QueryIndividuals(getContext().getSelf(), ids));
+                return;
+            }
+
+            Individual.IndividualEvent individualEvent = newInteraction();
+
+            for (int individualId : ids) {
+                if (individualId <= 0 || individualId > neighborhood.size()) continue;
+                tickScheduler.schedule(neighborhood.get(individualId - 1), individualEvent);
+            }
+        }
+
+        /**
+         * Triggers interactions with a couple of the Individual actors contacts in the contact
+         * network of the simulation.
+         */
+        private void queryContacts() {
+            int numberOfContacts = network.sample(id, random, contacts);
+
+            if (neighborhood == null) {
+                simulation.tell(new Simulation.QueryIndividuals(getContext().getSelf(),
+                        Arrays.copyOf(contacts, numberOfContacts)));
+                return;
+            }
+
+            Individual.IndividualEvent individualEvent = newInteraction();
+
+            for (int i = 0; i < numberOfContacts; i++) {
+                tickScheduler.schedule(neighborhood.get(contacts[i] - 1), individualEvent);
+            }
+        }
+
+        /**
+         * Creates the interaction event sent to interaction partners based on the Individual
+         * actors group.
+         *
+         * @return the interaction event
+         */
+        private Individual.IndividualEvent newInteraction() {
+            if (group == Group.INFECTED) return interactionAsInfected;
+
+            return interactionAsSusceptible;
         }
 
         /**
          * Informs the Aggregator actor that a Individual which hasn't been infected has become
          * infected.
          *
-         * @param from who infected the Individual actor
+         * @param from the id of who infected the Individual actor, 0 for the Simulation actor
          */
-        private void reportNewInfection(String from) {
+        private void reportNewInfection(int from) {
             aggregator.tell(new Aggregator.NewInfected(
                     from,
-                    getContext().getSelf().path().name(),
+                    id,
                     numberOfInteractions
             ));
         }
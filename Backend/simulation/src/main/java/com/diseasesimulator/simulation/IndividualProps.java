@@ -1,5 +1,7 @@
 package com.diseasesimulator.simulation;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+
 /**
  * The IndividualProps class is used to supply Individual actors with required
  * information about the simulation.
@@ -8,10 +10,24 @@ public class IndividualProps {
 
     private final int numberOfPeople; // how many Individual actors are in this simulation
     private final int probabilityOfInfection; // how likely infections are on interactions
+    private final Topology topology; // how the contact network of this simulation is shaped
+    private final long networkSeed; // the seed the contact network is generated from
+    private final int incubationTicks; // how many ticks individuals stay Exposed
+    private final int infectiousTicks; // how many ticks individuals stay Infected
 
-    public IndividualProps(int numberOfPeople, int probabilityOfInfection) {
+    @JsonCreator
+    public IndividualProps(int numberOfPeople,
+                           int probabilityOfInfection,
+                           Topology topology,
+                           long networkSeed,
+                           int incubationTicks,
+                           int infectiousTicks) {
         this.numberOfPeople = numberOfPeople;
         this.probabilityOfInfection = probabilityOfInfection;
+        this.topology = topology;
+        this.networkSeed = networkSeed;
+        this.incubationTicks = incubationTicks;
+        this.infectiousTicks = infectiousTicks;
     }
 
     public int getNumberOfPeople() {
@@ -21,4 +37,20 @@ public class IndividualProps {
     public int getProbabilityOfInfection() {
         return probabilityOfInfection;
     }
+
+    public Topology getTopology() {
+        return topology;
+    }
+
+    public long getNetworkSeed() {
+        return networkSeed;
+    }
+
+    public int getIncubationTicks() {
+        return incubationTicks;
+    }
+
+    public int getInfectiousTicks() {
+        return infectiousTicks;
+    }
 }
@@ -0,0 +1,153 @@
+package com.diseasesimulator.simulation;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.typed.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.BroadcastHub;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.util.ByteString;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The InfectionSink enum represents where the Aggregator actor publishes batches of infections to.
+ * Usually that's RabbitMQ, for benchmarks batches can be kept in memory instead, so no broker is
+ * required. Single-node deployments can skip the broker and stream batches directly via HTTP,
+ * see DirectStreams. A batch without infections marks the end of a simulation, it contains the
+ * number of infections of the simulation as decimal text. It's published to RabbitMQ as a message
+ * of type simulation-end, it isn't streamed via HTTP. Once the Aggregator actor has stopped, the
+ * sink releases whatever it has set up for the simulation.
+ */
+public enum InfectionSink {
+    AMQP {
+        private static final String END_OF_SIMULATION = "simulation-end";
+
+        /**
+         * Declares the queue named after the simulation.
+         */
+        @Override
+        public CompletionStage<Done> prepare(ActorSystem<?> system, String simulationName) {
+            return AmqpPublisher.get(system).declare(simulationName);
+        }
+
+        /**
+         * Publishes batches via the shared AmqpPublisher to the queue named after the simulation.
+         */
+        @Override
+        public Flow<Pair<ByteString, Integer>, Pair<Boolean, Integer>, NotUsed> publish(ActorSystem<?> system,
+                                                                                       String simulationName,
+                                                                                       WireFormat wireFormat,
+                                                                                       int bufferSize) {
+            final AmqpPublisher publisher = AmqpPublisher.get(system);
+
+            final com.rabbitmq.client.AMQP.BasicProperties properties =
+                    new com.rabbitmq.client.AMQP.BasicProperties.Builder()
+                            .contentType(wireFormat.getContentType())
+                            .build();
+
+            final com.rabbitmq.client.AMQP.BasicProperties endProperties =
+                    new com.rabbitmq.client.AMQP.BasicProperties.Builder()
+                            .type(END_OF_SIMULATION)
+                            .build();
+
+            return publisher.publish(simulationName, properties, endProperties, bufferSize);
+        }
+    },
+    DIRECT {
+        private static final int HUB_BUFFER_SIZE = 256; // must be a power of two
+
+        /**
+         * Publishes batches to a BroadcastHub which is streamed via HTTP. While no one streams
+         * the simulation, or a client can't keep up, up to simulation.aggregator.direct-buffer-size
+         * batches are kept for it and the oldest ones are dropped beyond that, so a missing client
+         * can't stall the simulation. Clients tell from the end of the simulation whether they've
+         * missed any infections.
+         */
+        @Override
+        public Flow<Pair<ByteString, Integer>, Pair<Boolean, Integer>, NotUsed> publish(ActorSystem<?> system,
+                                                                                       String simulationName,
+                                                                                       WireFormat wireFormat,
+                                                                                       int bufferSize) {
+            final int directBufferSize = system.settings().config().getInt("simulation.aggregator.direct-buffer-size");
+
+            final Sink<Pair<ByteString, Integer>, NotUsed> hub = Flow.<Pair<ByteString, Integer>>create()
+                    .filter(batch -> batch.second() > 0)
+                    .map(Pair::first)
+                    .buffer(directBufferSize, OverflowStrategy.dropHead())
+                    .watchTermination((notUsed, done) -> {
+                        done.whenComplete((result, failure) -> DirectStreams.getDirectStreams().stopped(simulationName));
+                        return notUsed;
+                    })
+                    .toMat(BroadcastHub.of(ByteString.class, HUB_BUFFER_SIZE), Keep.right())
+                    .mapMaterializedValue(batches -> {
+                        DirectStreams.getDirectStreams().started(simulationName, batches);
+                        return NotUsed.getInstance();
+                    });
+
+            return Flow.<Pair<ByteString, Integer>>create()
+                    .alsoTo(hub)
+                    .map(batch -> Pair.create(true, batch.second()));
+        }
+
+        /**
+         * Stops the simulation from being streamed by clients which haven't subscribed yet.
+         */
+        @Override
+        public void release(ActorSystem<?> system, String simulationName) {
+            DirectStreams.getDirectStreams().stopped(simulationName);
+        }
+    },
+    IN_MEMORY {
+        @Override
+        public Flow<Pair<ByteString, Integer>, Pair<Boolean, Integer>, NotUsed> publish(ActorSystem<?> system,
+                                                                                       String simulationName,
+                                                                                       WireFormat wireFormat,
+                                                                                       int bufferSize) {
+            return Flow.<Pair<ByteString, Integer>>create()
+                    .map(batch -> Pair.create(true, batch.second()));
+        }
+    };
+
+    /**
+     * Sets up the destination of the batches of a simulation, batches are published once it has
+     * been set up. Nothing needs to be set up by default.
+     *
+     * @param system         the actor system
+     * @param simulationName the name of the simulation
+     * @return completes once the destination has been set up, fails if it can't be set up
+     */
+    public CompletionStage<Done> prepare(ActorSystem<?> system, String simulationName) {
+        return CompletableFuture.completedFuture(Done.getInstance());
+    }
+
+    /**
+     * Releases what has been set up for a simulation once its Aggregator actor has stopped,
+     * whether its stream has completed or not. Nothing needs to be released by default.
+     *
+     * @param system         the actor system
+     * @param simulationName the name of the simulation
+     */
+    public void release(ActorSystem<?> system, String simulationName) {
+    }
+
+    /**
+     * Creates the flow publishing the batches of a simulation. Every batch consists of the encoded
+     * infections and the number of infections in it. For every batch the flow emits whether it
+     * has been published and the number of infections in it.
+     *
+     * @param system         the actor system
+     * @param simulationName the name of the simulation
+     * @param wireFormat     the format the infections have been encoded in
+     * @param bufferSize     how many batches are buffered at most
+     * @return the flow publishing the batches
+     */
+    public abstract Flow<Pair<ByteString, Integer>, Pair<Boolean, Integer>, NotUsed> publish(ActorSystem<?> system,
+                                                                                            String simulationName,
+                                                                                            WireFormat wireFormat,
+                                                                                            int bufferSize);
+}
@@ -0,0 +1,110 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.typed.MailboxSelector;
+import akka.dispatch.*;
+import com.typesafe.config.Config;
+import scala.Option;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The InstrumentedMailbox is selected explicitly for the Simulation actors and their children,
+ * see simulation.mailboxes. It counts the received messages by type, the messages waiting in the
+ * mailbox and the live actors in the statistics of the simulation, registered by the id the
+ * simulation has been admitted with, which its Simulation actor is named after. Every kind of
+ * actor has a mailbox config of its own, which tells the kind the mailbox depth is counted for.
+ */
+public class InstrumentedMailbox implements MailboxType, ProducesMessageQueue<InstrumentedMailbox.InstrumentedMessageQueue> {
+
+    private static final String SIMULATION = "simulation"; // the kind of the Simulation actors
+
+    private final UnboundedMailbox unboundedMailbox = new UnboundedMailbox();
+    private final String kind; // the kind of actor the mailbox is selected for
+
+    public InstrumentedMailbox(ActorSystem.Settings settings, Config config) {
+        this.kind = config.getString("kind");
+    }
+
+    /**
+     * @param kind the kind of actor, one of the mailboxes in simulation.mailboxes
+     * @return the selector of the mailbox for the kind of actor
+     */
+    public static MailboxSelector selector(String kind) {
+        return MailboxSelector.fromConfig("simulation.mailboxes." + kind);
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        if (owner.isEmpty()) return unboundedMailbox.create(owner, system);
+
+        // the Simulation actor is named after the id of its simulation, its children are right below it
+        String simulationId = kind.equals(SIMULATION)
+                ? owner.get().path().name()
+                : owner.get().path().parent().name();
+
+        SimulationStats stats = Statistics.getStatistics().register(simulationId);
+
+        return new InstrumentedMessageQueue(stats, stats.mailboxDepth(kind));
+    }
+
+    public static class InstrumentedMessageQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+
+        private final Queue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger(); // the messages in this mailbox
+        private final SimulationStats stats;
+        private final LongAdder depth; // shared by the mailboxes of the same kind of actor
+
+        private InstrumentedMessageQueue(SimulationStats stats, LongAdder depth) {
+            this.stats = stats;
+            this.depth = depth;
+            stats.actorStarted();
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            queue.offer(handle);
+            size.incrementAndGet();
+            depth.increment();
+        }
+
+        @Override
+        public Envelope dequeue() {
+            Envelope handle = queue.poll();
+
+            if (handle != null) {
+                size.decrementAndGet();
+                depth.decrement();
+                stats.received(handle.message().getClass());
+            }
+
+            return handle;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return Math.max(0, size.get());
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            Envelope handle;
+            while ((handle = queue.poll()) != null) {
+                size.decrementAndGet();
+                depth.decrement();
+                deadLetters.enqueue(owner, handle);
+            }
+
+            stats.actorStopped();
+        }
+    }
+}
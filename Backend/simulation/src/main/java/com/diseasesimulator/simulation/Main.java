@@ -5,21 +5,32 @@ import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.Terminated;
-import akka.actor.typed.javadsl.Adapter;
-import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.*;
 import akka.http.javadsl.ConnectHttp;
 import akka.http.javadsl.Http;
 import akka.http.javadsl.ServerBinding;
 import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
 import akka.http.javadsl.model.HttpRequest;
 import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCode;
 import akka.http.javadsl.model.StatusCodes;
 import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.PathMatchers;
 import akka.http.javadsl.server.Route;
 import akka.stream.Materializer;
 import akka.stream.javadsl.Flow;
+import akka.util.ByteString;
+import com.typesafe.config.Config;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
 
@@ -28,14 +39,26 @@ public class Main extends AllDirectives {
     interface MainCommand {
     }
 
+    /**
+     * Requests a new simulation. The simulation is started right away if fewer than
+     * simulation.admission.max-running simulations are running, otherwise it waits for a running
+     * simulation to stop. If simulation.admission.max-queued simulations are waiting already the
+     * simulation is rejected. Clients may choose the id of the simulation, which is the name of its
+     * queue as well, so they can consume the queue before the simulation has been started.
+     */
     private static final class NewSimulation implements MainCommand {
 
-        private final String simulationId = "simulation" + UUID.randomUUID();
+        private final String simulationId;
 
         private final SimulationRequest request;
+        private final ActorRef<Admission> replyTo;
 
-        public NewSimulation(SimulationRequest request) {
+        public NewSimulation(SimulationRequest request, ActorRef<Admission> replyTo) {
+            this.simulationId = request.getSimulationId() == null
+                    ? "simulation" + UUID.randomUUID()
+                    : request.getSimulationId();
             this.request = request;
+            this.replyTo = replyTo;
         }
 
         public String getSimulationId() {
@@ -45,26 +68,204 @@ public class Main extends AllDirectives {
         public SimulationRequest getRequest() {
             return request;
         }
+
+        public ActorRef<Admission> getReplyTo() {
+            return replyTo;
+        }
+    }
+
+    /**
+     * The response to a NewSimulation command, tells whether the simulation has been admitted.
+     */
+    private static final class Admission {
+
+        private final String simulationId;
+        private final Outcome outcome;
+
+        private Admission(String simulationId, Outcome outcome) {
+            this.simulationId = simulationId;
+            this.outcome = outcome;
+        }
+
+        public String getSimulationId() {
+            return simulationId;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+    }
+
+    /**
+     * Whether a simulation has been admitted and why it hasn't, along with the according status code.
+     */
+    private enum Outcome {
+        ADMITTED(StatusCodes.OK),
+        TOO_MANY_SIMULATIONS(StatusCodes.TOO_MANY_REQUESTS),
+        INVALID_ID(StatusCodes.BAD_REQUEST), // ids are used as actor names and file names
+        UNKNOWN_DISPATCHER_PROFILE(StatusCodes.BAD_REQUEST),
+        // ids are unique among the simulations admitted since the service has started and the
+        // simulations whose event logs are retained, ids of deleted logs can be used again after a restart
+        DUPLICATE_ID(StatusCodes.CONFLICT);
+
+        private final StatusCode statusCode;
+
+        Outcome(StatusCode statusCode) {
+            this.statusCode = statusCode;
+        }
+
+        public StatusCode getStatusCode() {
+            return statusCode;
+        }
     }
 
     public static Behavior<Main.MainCommand> create() {
-        return Behaviors.setup(
-                context -> Behaviors.receive(MainCommand.class)
-                        .onMessage(NewSimulation.class, (command) -> {
-                            SimulationRequest request = command.getRequest();
-
-                            ActorRef<Simulation.SimulationCommand> simulation = context.spawn(Simulation.create(),
-                                    command.getSimulationId());
-                            simulation.tell(new Simulation.StartSimulation(
-                                    request.getInitialNumberOfInfected(),
-                                    request.getNumberOfPeople(),
-                                    request.getProbabilityOfInfection())
-                            );
-
-                            return Behaviors.same();
-                        })
-                        .onSignal(Terminated.class, sig -> Behaviors.stopped())
-                        .build());
+        return Behaviors.setup(MainBehavior::new);
+    }
+
+    /**
+     * Admits simulations and spawns a Simulation actor for every started simulation. Simulations
+     * run on the dispatcher of the first tier in simulation.tiers which covers their number of
+     * people, so large simulations can't starve small ones, unless their dispatcher profile names
+     * a dispatcher for the Simulation actor.
+     */
+    public static class MainBehavior extends AbstractBehavior<MainCommand> {
+
+        private final int maxRunning; // how many simulations are running at most
+        private final int maxQueued; // how many simulations are waiting to be started at most
+        private final List<? extends Config> tiers;
+        private final InfectionSink sink; // where the infections of simulations are published to
+
+        private final Deque<NewSimulation> queued = new ArrayDeque<>();
+        // the ids of the simulations admitted since startup and of the logged ones, which can't be used again
+        private final Set<String> usedIds = new HashSet<>();
+        private int running;
+
+        private MainBehavior(ActorContext<MainCommand> context) {
+            super(context);
+
+            Config config = context.getSystem().settings().config().getConfig("simulation");
+            this.maxRunning = config.getInt("admission.max-running");
+            this.maxQueued = config.getInt("admission.max-queued");
+            this.tiers = config.getConfigList("tiers");
+            this.sink = config.getEnum(InfectionSink.class, "aggregator.sink");
+
+            if (Cohort.isClustered(context.getSystem())) Cohort.initSharding(context.getSystem());
+
+            if (config.getBoolean("event-log.enabled")) {
+                try {
+                    usedIds.addAll(EventLog.deleteUnclosed(context.getSystem().settings().config()));
+                } catch (IOException e) {
+                    context.getLog().warn("Deleting the unclosed event logs failed", e);
+                }
+            }
+        }
+
+        @Override
+        public Receive<MainCommand> createReceive() {
+            return newReceiveBuilder()
+                    .onMessage(NewSimulation.class, this::admitSimulation)
+                    .onSignal(Terminated.class, this::simulationStopped)
+                    .build();
+        }
+
+        /**
+         * NewSimulation command handler
+         * Starts the simulation or queues it, unless too many simulations are queued already, its
+         * id is invalid or has been used before or it requests a dispatcher profile which isn't
+         * configured.
+         *
+         * @param command the received command
+         * @return
+         */
+        private Behavior<MainCommand> admitSimulation(NewSimulation command) {
+            String simulationId = command.getSimulationId();
+            String dispatcherProfile = command.getRequest().getDispatcherProfile();
+            Outcome outcome = Outcome.ADMITTED;
+
+            if (!simulationId.matches("[A-Za-z0-9-]+")) {
+                outcome = Outcome.INVALID_ID;
+            } else if (isUsed(simulationId)) {
+                outcome = Outcome.DUPLICATE_ID;
+            } else if (dispatcherProfile != null
+                    && !DispatcherProfile.isConfigured(getContext().getSystem(), dispatcherProfile)) {
+                outcome = Outcome.UNKNOWN_DISPATCHER_PROFILE;
+            } else if (running < maxRunning) {
+                startSimulation(command);
+            } else if (queued.size() < maxQueued) {
+                queued.add(command);
+            } else {
+                outcome = Outcome.TOO_MANY_SIMULATIONS;
+            }
+
+            if (outcome == Outcome.ADMITTED) usedIds.add(simulationId);
+
+            if (outcome == Outcome.ADMITTED && sink == InfectionSink.DIRECT) {
+                DirectStreams.getDirectStreams().admitted(simulationId, command.getRequest().getWireFormat());
+            }
+
+            command.getReplyTo().tell(new Admission(simulationId, outcome));
+            return Behaviors.same();
+        }
+
+        /**
+         * Doesn't touch the event log directory, which is only read once on startup, so admitting
+         * a simulation doesn't block the actor.
+         *
+         * @param simulationId the id of a new simulation
+         * @return whether a simulation with the id has been admitted since startup or its log is
+         * retained from before
+         */
+        private boolean isUsed(String simulationId) {
+            return usedIds.contains(simulationId);
+        }
+
+        /**
+         * Terminated signal handler
+         * Starts the next queued simulation once a running simulation has stopped.
+         *
+         * @param signal the received signal
+         * @return
+         */
+        private Behavior<MainCommand> simulationStopped(Terminated signal) {
+            running--;
+
+            NewSimulation next = queued.poll();
+            if (next != null) startSimulation(next);
+
+            return Behaviors.same();
+        }
+
+        private void startSimulation(NewSimulation command) {
+            Simulation.StartSimulation start = new Simulation.StartSimulation(command.getRequest(),
+                    Cohort.isClustered(getContext().getSystem()));
+
+            ActorRef<Simulation.SimulationCommand> simulation = getContext().spawn(Simulation.create(),
+                    command.getSimulationId(),
+                    InstrumentedMailbox.selector("simulation").withDispatcherFromConfig(dispatcherOf(start)));
+            getContext().watch(simulation);
+            simulation.tell(start);
+
+            running++;
+        }
+
+        /**
+         * @param start the StartSimulation command of the simulation
+         * @return the config path of the dispatcher of the Simulation actor
+         */
+        private String dispatcherOf(Simulation.StartSimulation start) {
+            DispatcherProfile profile = DispatcherProfile.load(getContext().getSystem(), start.getDispatcherProfile());
+
+            if (profile.getSimulation() != null) return profile.getSimulation();
+
+            for (Config tier : tiers) {
+                if (start.getNumberOfPeople() <= tier.getInt("max-number-of-people")) {
+                    return tier.getString("dispatcher");
+                }
+            }
+
+            return tiers.get(tiers.size() - 1).getString("dispatcher");
+        }
     }
 
     public static void main(String[] args) {
@@ -78,10 +279,11 @@ public class Main extends AllDirectives {
         final Flow<HttpRequest, HttpResponse, NotUsed> routeFlow = new Main()
                 .createRoute(system)
                 .flow(classicSystem, materializer);
+        final int port = system.settings().config().getInt("simulation.http.port");
         final CompletionStage<ServerBinding> binding = http.bindAndHandle(routeFlow,
-                ConnectHttp.toHost("localhost", 8080), materializer);
+                ConnectHttp.toHost("localhost", port), materializer);
 
-        System.out.println("Server started: http://localhost:8080/simulation/start ");
+        System.out.println("Server started: http://localhost:" + port + "/simulation/start ");
 
         try {
             System.in.read();
@@ -99,12 +301,42 @@ public class Main extends AllDirectives {
                         path("start", () ->
                                 post(() -> entity(
                                         Jackson.unmarshaller(SimulationRequest.class),
-                                        simulationReq -> {
-                                            NewSimulation command = new NewSimulation(simulationReq);
-                                            system.tell(command);
-                                            return complete(StatusCodes.OK, command.getSimulationId());
-                                        })
+                                        simulationReq -> onSuccess(
+                                                AskPattern.<MainCommand, Admission>ask(system,
+                                                        replyTo -> new NewSimulation(simulationReq, replyTo),
+                                                        Duration.ofSeconds(3),
+                                                        system.scheduler()),
+                                                admission -> admission.getOutcome() == Outcome.ADMITTED
+                                                        ? complete(StatusCodes.OK, admission.getSimulationId())
+                                                        : complete(admission.getOutcome().getStatusCode()))
+                                        )
                                 ))
+                ),
+                pathPrefix("simulation", () ->
+                        path(PathMatchers.segment().slash("infections"), simulationId ->
+                                get(() -> DirectStreams.getDirectStreams().get(simulationId)
+                                        .<Route>map(stream -> complete(HttpEntities.createChunked(
+                                                ContentTypes.parse(stream.getContentType()), stream.getInfections())))
+                                        .orElseGet(() -> complete(StatusCodes.NOT_FOUND)))
+                        )
+                ),
+                pathPrefix("simulation", () ->
+                        path(PathMatchers.segment().slash("events"), simulationId ->
+                                get(() -> EventLog.find(system.settings().config(), simulationId)
+                                        .<Route>map(log -> getFromFile(log.toFile(), ContentTypes.APPLICATION_OCTET_STREAM))
+                                        .orElseGet(() -> complete(StatusCodes.NOT_FOUND)))
+                        )
+                ),
+                pathPrefix("simulation", () ->
+                        path(PathMatchers.segment().slash("stats"), simulationId ->
+                                get(() -> Statistics.getStatistics().get(simulationId)
+                                        .<Route>map(stats -> complete(StatusCodes.OK, stats, Jackson.marshaller()))
+                                        .orElseGet(() -> complete(StatusCodes.NOT_FOUND)))
+                        )
+                ),
+                path("metrics", () ->
+                        get(() -> complete(HttpEntities.create(ContentTypes.parse(PrometheusFormat.CONTENT_TYPE),
+                                ByteString.fromString(PrometheusFormat.render(Statistics.getStatistics().getAll())))))
                 ));
     }
 }
@@ -0,0 +1,472 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import com.typesafe.config.Config;
+import scala.concurrent.ExecutionContextExecutor;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ParallelSimulation class simulates the individuals of a simulation without any actors.
+ * The state of the individuals is kept in one primitive array per attribute and the simulation
+ * advances in discrete steps, each of which is computed in parallel over ranges of individuals
+ * on the simulation.dispatchers.parallel dispatcher. Individuals follow the same rules as Individual actors do, an
+ * interaction triggered in one step is handled by the individual interacted with in the next step.
+ * Every range of individuals has its own stream of random numbers and the outcome of a step doesn't
+ * depend on the order ranges are computed in, so a seed always leads to the same infections. A step
+ * counts as a tick, the individuals exposed or infected in a step progress together after the
+ * incubation or infectious period, kept in a TimingWheel advanced between steps. If pacing is
+ * enabled, steps start a tick-interval apart, like the ticks of the other engines. While the
+ * simulation is paused no steps are computed, so the Aggregator actor can catch up.
+ */
+public class ParallelSimulation {
+
+    private static final int RANGE_SIZE = 4096; // how many individuals are covered by a single task
+    private static final VarHandle INTERACTIONS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final ActorRef<Aggregator.AggregatorEvent> aggregator;
+    private final IndividualProps props;
+    private final ContactNetwork network; // chooses the interaction partners of the individuals
+    private final ScheduledExecutorService timer; // delays paced steps, see TickSchedulers
+    private final ExecutionContextExecutor executor; // computes the steps, a fork-join pool
+    private final long tickInterval; // how many nanoseconds a step takes at least, 0 without pacing
+
+    // the state of the individuals, indexed by id - 1
+    private final byte[] groups;
+    private final int[] numberOfInteractions;
+
+    // the interactions to be handled in the current step, indexed by id - 1
+    private int[] interactionsWithSusceptible;
+    private int[] interactionsWithInfected;
+    private int[] infectedBy; // the lowest id of the infected individuals interacted with
+
+    // the interactions triggered in the current step, which are handled in the next step
+    private int[] nextInteractionsWithSusceptible;
+    private int[] nextInteractionsWithInfected;
+    private int[] nextInfectedBy;
+
+    private final Range[] ranges;
+
+    // the indexes of the individuals exposed or infected together, only used between steps
+    private final TimingWheel<int[]> transitions = new TimingWheel<>();
+
+    private volatile boolean stopped;
+
+    private boolean paused; // whether steps are held back, guarded by this
+    private Runnable pendingStep; // the step held back while paused, guarded by this
+
+    /**
+     * @param system     the actor system the simulation runs in
+     * @param aggregator the Aggregator actor new infections are reported to
+     * @param props      the information about the simulation
+     * @param network    the contact network of the simulation
+     * @param random     the source of the random numbers of the simulation
+     */
+    public ParallelSimulation(ActorSystem<?> system,
+                              ActorRef<Aggregator.AggregatorEvent> aggregator,
+                              IndividualProps props,
+                              ContactNetwork network,
+                              SplittableRandom random) {
+        this.aggregator = aggregator;
+        this.props = props;
+        this.network = network;
+        this.timer = TickSchedulers.get(system).timer();
+        this.executor = system.dispatchers().lookup(DispatcherSelector.fromConfig("simulation.dispatchers.parallel"));
+
+        Config pacing = system.settings().config().getConfig("simulation.pacing");
+        this.tickInterval = pacing.getBoolean("enabled") ? pacing.getDuration("tick-interval").toNanos() : 0;
+
+        int numberOfPeople = props.getNumberOfPeople();
+
+        this.groups = new byte[numberOfPeople];
+        this.numberOfInteractions = new int[numberOfPeople];
+        this.interactionsWithSusceptible = new int[numberOfPeople];
+        this.interactionsWithInfected = new int[numberOfPeople];
+        this.infectedBy = new int[numberOfPeople];
+        this.nextInteractionsWithSusceptible = new int[numberOfPeople];
+        this.nextInteractionsWithInfected = new int[numberOfPeople];
+        this.nextInfectedBy = new int[numberOfPeople];
+
+        Arrays.fill(groups, (byte) Group.SUSCEPTIBLE.ordinal());
+        Arrays.fill(infectedBy, Integer.MAX_VALUE);
+        Arrays.fill(nextInfectedBy, Integer.MAX_VALUE);
+
+        this.ranges = new Range[(numberOfPeople + RANGE_SIZE - 1) / RANGE_SIZE];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = new Range(random.split());
+        }
+    }
+
+    /**
+     * Starts the simulation by infecting the supplied individuals, skipping the incubation
+     * period. Steps are computed until the simulation is stopped or no more interactions are
+     * triggered and nobody is Exposed or Infected anymore. Steps without any interactions only
+     * advance the transitions.
+     *
+     * @param initiallyInfected the indexes (id - 1) of the initially infected individuals
+     */
+    public void start(int[] initiallyInfected) {
+        executor.execute(() -> {
+            long started = System.nanoTime();
+            Range range = ranges[0];
+            int[] infected = new int[initiallyInfected.length];
+            int numberOfInfected = 0;
+
+            for (int index : initiallyInfected) {
+                numberOfInteractions[index]++;
+                if (range.setInfected(index)) infected[numberOfInfected++] = index;
+                range.queryIndividuals(index);
+            }
+
+            range.reportInfections();
+
+            if (numberOfInfected > 0) {
+                transitions.schedule(Arrays.copyOf(infected, numberOfInfected),
+                        transitions.getTime() + props.getInfectiousTicks());
+            }
+
+            scheduleStep(started, range.triggered > 0);
+        });
+    }
+
+    /**
+     * Computes a step, handling the interactions triggered in the previous step if there were
+     * any, and schedules the next step.
+     *
+     * @param triggered whether interactions have been triggered in the previous step
+     */
+    private void step(boolean triggered) {
+        long started = System.nanoTime();
+
+        if (triggered) {
+            swapInteractions();
+
+            new StepTask(0, groups.length).invoke();
+
+            for (Range range : ranges) {
+                range.reportInfections();
+            }
+        }
+
+        progress();
+
+        boolean triggeredNext = false;
+        for (Range range : ranges) {
+            triggeredNext |= range.triggered > 0;
+        }
+
+        scheduleStep(started, triggeredNext);
+    }
+
+    /**
+     * Schedules the next step unless the simulation is stopped or over. Each step is a task of
+     * its own, so simulations take turns on the dispatcher. If pacing is enabled, the next step
+     * starts a tick-interval after the previous one, or right away if that one took longer.
+     *
+     * @param started   when the previous step started, in nanoseconds
+     * @param triggered whether interactions have been triggered in the previous step
+     */
+    private void scheduleStep(long started, boolean triggered) {
+        if (stopped || (!triggered && transitions.isEmpty())) return;
+
+        synchronized (this) {
+            if (paused) {
+                pendingStep = () -> step(triggered);
+                return;
+            }
+        }
+
+        long delay = started + tickInterval - System.nanoTime();
+
+        if (delay > 0) {
+            timer.schedule(() -> executor.execute(() -> step(triggered)), delay, TimeUnit.NANOSECONDS);
+        } else {
+            executor.execute(() -> step(triggered));
+        }
+    }
+
+    /**
+     * Holds back the steps after the step currently being computed until resumed.
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Computes the step held back while paused, if any, and the steps after it.
+     */
+    public void resume() {
+        Runnable step;
+
+        synchronized (this) {
+            paused = false;
+            step = pendingStep;
+            pendingStep = null;
+        }
+
+        if (step != null) executor.execute(step);
+    }
+
+    /**
+     * Stops the simulation after the step currently being computed.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * Advances the transitions by a step. Exposed individuals whose incubation period is over
+     * become Infected and trigger further interactions (in any case, not by chance), Infected
+     * individuals whose infectious period is over recover.
+     */
+    private void progress() {
+        int[] numberOfRecovered = {0};
+
+        transitions.advance(indexes -> {
+            int numberOfInfected = 0;
+
+            for (int index : indexes) {
+                if (groups[index] == Group.EXPOSED.ordinal()) {
+                    groups[index] = (byte) Group.INFECTED.ordinal();
+                    indexes[numberOfInfected++] = index;
+                    ranges[index / RANGE_SIZE].queryIndividuals(index);
+                } else if (groups[index] == Group.INFECTED.ordinal()) {
+                    groups[index] = (byte) Group.RECOVERED.ordinal();
+                    numberOfRecovered[0]++;
+                }
+            }
+
+            // the individuals which have become Infected are moved to the front and progress together again
+            if (numberOfInfected > 0) {
+                int[] infected = numberOfInfected == indexes.length ? indexes : Arrays.copyOf(indexes, numberOfInfected);
+                transitions.schedule(infected, transitions.getTime() + props.getInfectiousTicks());
+            }
+        });
+
+        if (numberOfRecovered[0] > 0) aggregator.tell(new Aggregator.Recovered(numberOfRecovered[0]));
+    }
+
+    private void swapInteractions() {
+        int[] interactionsWithSusceptible = this.interactionsWithSusceptible;
+        int[] interactionsWithInfected = this.interactionsWithInfected;
+        int[] infectedBy = this.infectedBy;
+
+        this.interactionsWithSusceptible = nextInteractionsWithSusceptible;
+        this.interactionsWithInfected = nextInteractionsWithInfected;
+        this.infectedBy = nextInfectedBy;
+
+        this.nextInteractionsWithSusceptible = interactionsWithSusceptible;
+        this.nextInteractionsWithInfected = interactionsWithInfected;
+        this.nextInfectedBy = infectedBy;
+    }
+
+    /**
+     * Computes a step for a range of individuals, splitting it into ranges of RANGE_SIZE
+     * individuals which are computed in parallel.
+     */
+    private final class StepTask extends RecursiveAction {
+
+        private final int from; // the index of the first individual, inclusive
+        private final int to; // the index of the last individual, exclusive
+
+        private StepTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RANGE_SIZE) {
+                ranges[from / RANGE_SIZE].step(from, to);
+                return;
+            }
+
+            int numberOfRanges = (to - from + RANGE_SIZE - 1) / RANGE_SIZE;
+            int middle = from + numberOfRanges / 2 * RANGE_SIZE;
+
+            invokeAll(new StepTask(from, middle), new StepTask(middle, to));
+        }
+    }
+
+    /**
+     * The state required to compute a step for a range of individuals. Every range is only
+     * ever computed by a single task at a time.
+     */
+    private final class Range {
+
+        private final SplittableRandom random;
+        private final int[] contacts = new int[ContactWindow.MAX_NUMBER_OF_CONTACTS];
+
+        // the infections of the current step, 3 ints (from, infected, numberOfInteractions) each
+        private int[] infections = new int[48];
+        private int numberOfInfections;
+
+        // the indexes of the individuals exposed in the current step
+        private int[] exposed = new int[16];
+        private int numberOfExposed;
+
+        private int triggered; // how many interactions have been triggered in the current step
+
+        private Range(SplittableRandom random) {
+            this.random = random;
+        }
+
+        /**
+         * Handles the interactions of the individuals in the range the same way Individual
+         * actors handle interactions. Every interaction with an infected individual has a chance
+         * to expose the individual interacted with, every interaction has a chance to trigger
+         * further interactions with other individuals, unless the individual interacted with has
+         * recovered. Within a step an individual triggers at most one round of interactions, no
+         * matter how many interactions it has handled, which keeps the interactions per step
+         * bounded by the number of people.
+         *
+         * @param from the index of the first individual, inclusive
+         * @param to   the index of the last individual, exclusive
+         */
+        private void step(int from, int to) {
+            triggered = 0;
+
+            for (int index = from; index < to; index++) {
+                int withInfected = interactionsWithInfected[index];
+                int withSusceptible = interactionsWithSusceptible[index];
+
+                if (withInfected == 0 && withSusceptible == 0) continue;
+
+                int interactedWith = infectedBy[index];
+
+                interactionsWithInfected[index] = 0;
+                interactionsWithSusceptible[index] = 0;
+                infectedBy[index] = Integer.MAX_VALUE;
+
+                for (int i = 0; i < withInfected; i++) {
+                    numberOfInteractions[index]++;
+
+                    if (random.nextInt(100) < props.getProbabilityOfInfection()) {
+                        setExposed(index, interactedWith);
+                    }
+                }
+
+                numberOfInteractions[index] += withSusceptible;
+
+                if (groups[index] == Group.RECOVERED.ordinal()) continue;
+
+                for (int i = 0; i < withInfected + withSusceptible; i++) {
+                    if (random.nextInt(10) < 4) {
+                        queryIndividuals(index);
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sets the individuals group to Exposed and records the infection if the individual
+         * hasn't been infected yet.
+         *
+         * @param index the index of the individual
+         * @param from  the id of the individual who infected the individual
+         */
+        private void setExposed(int index, int from) {
+            if (groups[index] != Group.SUSCEPTIBLE.ordinal()) return;
+
+            groups[index] = (byte) Group.EXPOSED.ordinal();
+            recordInfection(index, from);
+
+            if (numberOfExposed == exposed.length) exposed = Arrays.copyOf(exposed, numberOfExposed * 2);
+            exposed[numberOfExposed++] = index;
+        }
+
+        /**
+         * Sets the individuals group to Infected, skipping the incubation period, and records the
+         * infection if the individual hasn't been infected yet.
+         *
+         * @param index the index of the individual
+         * @return whether the individual hasn't been infected yet
+         */
+        private boolean setInfected(int index) {
+            if (groups[index] != Group.SUSCEPTIBLE.ordinal()) return false;
+
+            groups[index] = (byte) Group.INFECTED.ordinal();
+            recordInfection(index, 0);
+
+            return true;
+        }
+
+        /**
+         * Records an infection to be reported once the current step has been computed.
+         *
+         * @param index the index of the individual
+         * @param from  the id of the individual who infected the individual, 0 for the simulation
+         */
+        private void recordInfection(int index, int from) {
+            if (numberOfInfections * 3 == infections.length) {
+                infections = Arrays.copyOf(infections, infections.length * 2);
+            }
+
+            infections[numberOfInfections * 3] = from;
+            infections[numberOfInfections * 3 + 1] = index + 1;
+            infections[numberOfInfections * 3 + 2] = numberOfInteractions[index];
+            numberOfInfections++;
+        }
+
+        /**
+         * Chooses a couple of the supplied individuals contacts as interaction partners and adds the
+         * interactions to the ones handled in the next step.
+         *
+         * @param index the index of the individual interacting with others
+         */
+        private void queryIndividuals(int index) {
+            int id = index + 1;
+            int numberOfContacts = network.sample(id, random, contacts);
+
+            if (groups[index] == Group.INFECTED.ordinal()) {
+                for (int i = 0; i < numberOfContacts; i++) {
+                    int contact = contacts[i] - 1;
+
+                    INTERACTIONS.getAndAdd(nextInteractionsWithInfected, contact, 1);
+
+                    int infectedBy = (int) INTERACTIONS.getVolatile(nextInfectedBy, contact);
+                    while (id < infectedBy && !INTERACTIONS.compareAndSet(nextInfectedBy, contact, infectedBy, id)) {
+                        infectedBy = (int) INTERACTIONS.getVolatile(nextInfectedBy, contact);
+                    }
+                }
+            } else {
+                for (int i = 0; i < numberOfContacts; i++) {
+                    INTERACTIONS.getAndAdd(nextInteractionsWithSusceptible, contacts[i] - 1, 1);
+                }
+            }
+
+            triggered += numberOfContacts;
+        }
+
+        /**
+         * Informs the Aggregator actor about the infections of the current step and schedules
+         * the individuals exposed in the current step to progress after the incubation period.
+         */
+        private void reportInfections() {
+            for (int i = 0; i < numberOfInfections; i++) {
+                aggregator.tell(new Aggregator.NewInfected(
+                        infections[i * 3],
+                        infections[i * 3 + 1],
+                        infections[i * 3 + 2]
+                ));
+            }
+
+            numberOfInfections = 0;
+
+            if (numberOfExposed > 0) {
+                transitions.schedule(Arrays.copyOf(exposed, numberOfExposed),
+                        transitions.getTime() + props.getIncubationTicks());
+                numberOfExposed = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.diseasesimulator.simulation;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The PrometheusFormat class renders the statistics of simulations in the Prometheus text
+ * exposition format.
+ */
+public class PrometheusFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private PrometheusFormat() {
+    }
+
+    public static String render(Collection<SimulationStats> simulations) {
+        StringBuilder metrics = new StringBuilder();
+
+        metric(metrics, "simulation_messages_total", "counter",
+                "Messages received by the actors of a simulation", simulations,
+                SimulationStats::getMessages, "type");
+        metric(metrics, "simulation_mailbox_depth", "gauge",
+                "Messages waiting in the mailboxes of a simulation", simulations,
+                SimulationStats::getMailboxDepths, "actor");
+        metric(metrics, "simulation_live_actors", "gauge",
+                "Live actors of a simulation", simulations, SimulationStats::getLiveActors);
+        metric(metrics, "simulation_infections_offered_total", "counter",
+                "Infections offered to the publishing stream", simulations, SimulationStats::getOffered);
+        metric(metrics, "simulation_infections_published_total", "counter",
+                "Infections published to the broker", simulations, SimulationStats::getPublished);
+        metric(metrics, "simulation_infections_dropped_total", "counter",
+                "Offered infections which couldn't be published", simulations, SimulationStats::getDropped);
+        metric(metrics, "simulation_infections_rejected_total", "counter",
+                "Infections which couldn't be offered to the publishing stream", simulations,
+                SimulationStats::getRejected);
+        metric(metrics, "simulation_infections_in_flight", "gauge",
+                "Offered infections which are neither published nor dropped yet", simulations,
+                SimulationStats::getInFlight);
+        metric(metrics, "simulation_pauses_total", "counter",
+                "Times a simulation has been paused for its infections to be published", simulations,
+                SimulationStats::getPauses);
+        metric(metrics, "simulation_recovered_total", "counter",
+                "Individuals which have recovered", simulations, SimulationStats::getRecovered);
+        metric(metrics, "simulation_time_to_first_infection_seconds", "gauge",
+                "Time from the start of a simulation to the first infection", simulations,
+                stats -> seconds(stats.getMillisToFirstInfection()));
+        metric(metrics, "simulation_time_to_ninety_nine_percent_infected_seconds", "gauge",
+                "Time from the start of a simulation until 99% have been infected", simulations,
+                stats -> seconds(stats.getMillisToNinetyNinePercentInfected()));
+
+        return metrics.toString();
+    }
+
+    private static void metric(StringBuilder metrics, String name, String type, String help,
+                               Collection<SimulationStats> simulations,
+                               Function<SimulationStats, Number> value) {
+        header(metrics, name, type, help);
+
+        for (SimulationStats stats : simulations) {
+            Number sample = value.apply(stats);
+
+            if (sample == null) continue;
+
+            metrics.append(name).append("{simulation=\"").append(stats.getSimulationId()).append("\"} ")
+                    .append(sample).append('\n');
+        }
+    }
+
+    private static void metric(StringBuilder metrics, String name, String type, String help,
+                               Collection<SimulationStats> simulations,
+                               Function<SimulationStats, Map<String, ? extends Number>> values,
+                               String label) {
+        header(metrics, name, type, help);
+
+        for (SimulationStats stats : simulations) {
+            values.apply(stats).forEach((key, sample) -> metrics.append(name)
+                    .append("{simulation=\"").append(stats.getSimulationId())
+                    .append("\",").append(label).append("=\"").append(key).append("\"} ")
+                    .append(sample).append('\n'));
+        }
+    }
+
+    private static void header(StringBuilder metrics, String name, String type, String help) {
+        metrics.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        metrics.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static Double seconds(Long millis) {
+        return millis == null ? null : millis / 1000.0;
+    }
+}
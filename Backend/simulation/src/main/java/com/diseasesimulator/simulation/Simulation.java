@@ -2,21 +2,32 @@ package com.diseasesimulator.simulation;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.RecipientRef;
+import akka.actor.typed.Terminated;
 import akka.actor.typed.javadsl.*;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.typesafe.config.Config;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * The Simulation actor covers a single simulation started by a user. It's responsible for
- * setting up the simulation and getting it going as well as stopping it once everyone has
- * been infected. Individual actors use their related Simulation actor to access the actor
- * refs of other Individual actors they want to interact with.
+ * setting up the simulation and getting it going as well as stopping it once nobody is
+ * Exposed or Infected anymore. Once spawned, Individual actors receive the actor refs of the
+ * other Individual actors in their simulation so they can interact with them without going
+ * through the Simulation actor. Every Individual or Cohort actor gets its own stream of random
+ * numbers split off from the seed of the simulation. The actors of a simulation run on the
+ * dispatchers of the DispatcherProfile requested for the simulation. When a simulation is stopped,
+ * the Aggregator actor gets to publish its remaining infections and the end of the simulation
+ * first.
  */
 public class Simulation {
 
-    private final static Random random = new Random();
-
     interface SimulationCommand {
     }
 
@@ -29,9 +40,32 @@ public class Simulation {
         private final int initialNumberOfInfected;
         private final int numberOfPeople; // how many Individual actors are to be simulated
         private final int probabilityOfInfection; // how likely infections should be on interactions
+        private final Engine engine; // how the individuals are to be simulated
+        private final WireFormat wireFormat; // how infections are to be published
+        private final long seed; // the seed of the random numbers in the simulation
+        private final String dispatcherProfile; // the name of the dispatcher profile, may be null
+        private final Topology topology; // how the contact network is to be shaped
 
         public StartSimulation(int initialNumberOfInfected, int numberOfPeople, int probabilityOfInfection) {
-            if (numberOfPeople > 2000) {
+            this(new SimulationRequest(initialNumberOfInfected, numberOfPeople, probabilityOfInfection));
+        }
+
+        public StartSimulation(SimulationRequest request) {
+            this(request, false);
+        }
+
+        /**
+         * @param request   the requested simulation
+         * @param clustered whether the actor system is part of a cluster, without a cluster
+         *                  SHARDED falls back to COHORT, including its maximum number of people
+         */
+        public StartSimulation(SimulationRequest request, boolean clustered) {
+            int initialNumberOfInfected = request.getInitialNumberOfInfected();
+            int numberOfPeople = request.getNumberOfPeople();
+            int probabilityOfInfection = request.getProbabilityOfInfection();
+            Engine engine = request.getEngine() == Engine.SHARDED && !clustered ? Engine.COHORT : request.getEngine();
+
+            if (numberOfPeople > engine.getMaxNumberOfPeople()) {
                 numberOfPeople = 100;
             }
 
@@ -49,6 +83,11 @@ public class Simulation {
             this.initialNumberOfInfected = initialNumberOfInfected;
             this.numberOfPeople = numberOfPeople;
             this.probabilityOfInfection = probabilityOfInfection;
+            this.engine = engine;
+            this.wireFormat = request.getWireFormat();
+            this.seed = request.getSeed() != null ? request.getSeed() : ThreadLocalRandom.current().nextLong();
+            this.dispatcherProfile = request.getDispatcherProfile();
+            this.topology = request.getTopology();
         }
 
         public int getInitialNumberOfInfected() {
@@ -63,11 +102,36 @@ public class Simulation {
             return probabilityOfInfection;
         }
 
+        public Engine getEngine() {
+            return engine;
+        }
+
+        public WireFormat getWireFormat() {
+            return wireFormat;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public String getDispatcherProfile() {
+            return dispatcherProfile;
+        }
+
+        public Topology getTopology() {
+            return topology;
+        }
+
         @Override
         public String toString() {
             return "initialNumberOfInfected=" + initialNumberOfInfected +
                     ", numberOfPeople=" + numberOfPeople +
-                    ", probabilityOfInfection=" + probabilityOfInfection;
+                    ", probabilityOfInfection=" + probabilityOfInfection +
+                    ", engine=" + engine +
+                    ", wireFormat=" + wireFormat +
+                    ", seed=" + seed +
+                    ", dispatcherProfile=" + dispatcherProfile +
+                    ", topology=" + topology;
         }
     }
 
@@ -96,20 +160,189 @@ public class Simulation {
     }
 
     /**
-     * Used by the Aggregator actor to tell the Simulation actor that every Individual actor
-     * has been infected and the simulation can be stopped.
+     * Used by the Aggregator actor to tell the Simulation actor that nobody is Exposed or
+     * Infected anymore and the simulation can be stopped.
      */
     public static final class StopSimulation implements SimulationCommand {
     }
 
+    /**
+     * Used by the Aggregator actor to tell the Simulation actor that too many infections are
+     * waiting to be published and no further interactions are to happen until it has caught up.
+     */
+    public static final class PauseSimulation implements SimulationCommand {
+    }
+
+    /**
+     * Used by the Aggregator actor to tell the Simulation actor that the paused simulation can
+     * continue.
+     */
+    public static final class ResumeSimulation implements SimulationCommand {
+    }
+
+    /**
+     * Used by a sharded Cohort actor which has received events before being set up, e.g. as it
+     * has been moved to another node, to ask the Simulation actor for its Setup event.
+     */
+    public static final class CohortSetupRequested implements SimulationCommand, CborSerializable {
+
+        private final int cohort; // the index of the Cohort actor within the simulation
+
+        @JsonCreator
+        public CohortSetupRequested(int cohort) {
+            this.cohort = cohort;
+        }
+
+        public int getCohort() {
+            return cohort;
+        }
+    }
+
+    /**
+     * Used by a sharded Cohort actor to tell the Simulation actor that it has been set up.
+     */
+    public static final class CohortSetUp implements SimulationCommand, CborSerializable {
+
+        private final int cohort; // the index of the Cohort actor within the simulation
+
+        @JsonCreator
+        public CohortSetUp(int cohort) {
+            this.cohort = cohort;
+        }
+
+        public int getCohort() {
+            return cohort;
+        }
+    }
+
+    /**
+     * Used by a sharded Cohort actor which is moved to another node to hand the state of its
+     * individuals to the Simulation actor.
+     */
+    public static final class CohortHandedOff implements SimulationCommand, CborSerializable {
+
+        private final int cohort; // the index of the Cohort actor within the simulation
+        private final byte[] groups;
+        private final int[] numberOfInteractions;
+
+        public CohortHandedOff(int cohort, byte[] groups, int[] numberOfInteractions) {
+            this.cohort = cohort;
+            this.groups = groups;
+            this.numberOfInteractions = numberOfInteractions;
+        }
+
+        public int getCohort() {
+            return cohort;
+        }
+
+        public byte[] getGroups() {
+            return groups;
+        }
+
+        public int[] getNumberOfInteractions() {
+            return numberOfInteractions;
+        }
+    }
+
+    /**
+     * Used by a sharded Cohort actor to tell the Simulation actor that it can't be set up, so the
+     * simulation can't go on.
+     */
+    public static final class CohortLost implements SimulationCommand, CborSerializable {
+
+        private final int cohort; // the index of the Cohort actor within the simulation
+
+        @JsonCreator
+        public CohortLost(int cohort) {
+            this.cohort = cohort;
+        }
+
+        public int getCohort() {
+            return cohort;
+        }
+    }
+
+    /**
+     * Occurs when a sharded Cohort actor which has asked for its Setup event hasn't handed off
+     * its state in time, e.g. because its node has crashed.
+     */
+    private static final class HandOffTimedOut implements SimulationCommand {
+
+        private final int cohort;
+
+        private HandOffTimedOut(int cohort) {
+            this.cohort = cohort;
+        }
+    }
+
+    /**
+     * Occurs when the contact network of the started simulation has been generated, or has failed
+     * to be generated.
+     */
+    private static final class NetworkGenerated implements SimulationCommand {
+
+        private final StartSimulation command;
+        private final ContactNetwork network; // null if it has failed to be generated
+        private final Throwable failure;
+
+        private NetworkGenerated(StartSimulation command, ContactNetwork network, Throwable failure) {
+            this.command = command;
+            this.network = network;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Occurs when the Aggregator actor hasn't published the end of the simulation in time.
+     */
+    private enum AggregatorTimedOut implements SimulationCommand {
+        INSTANCE
+    }
+
     public static Behavior<SimulationCommand> create() {
         return Behaviors.setup(SimulationBehavior::new);
     }
 
+    /**
+     * @param simulationId the id of the simulation
+     * @return the key a Simulation actor running sharded Cohort actors registers with the
+     * receptionist, so Cohort actors moved to another node can find it
+     */
+    public static ServiceKey<SimulationCommand> serviceKey(String simulationId) {
+        return ServiceKey.create(SimulationCommand.class, "simulation-" + simulationId);
+    }
+
     public static class SimulationBehavior extends AbstractBehavior<SimulationCommand> {
 
         // the Individual actors in the started simulation
         private final List<ActorRef<Individual.IndividualEvent>> individuals = new ArrayList<>();
+        // the Cohort actors in the started simulation, if individuals are simulated in cohorts
+        private final List<RecipientRef<Cohort.CohortEvent>> cohorts = new ArrayList<>();
+        // the started simulation, if individuals are simulated without actors
+        private ParallelSimulation parallelSimulation;
+        // delays the interactions between Individual or Cohort actors
+        private TickScheduler tickScheduler;
+        // the source of the random numbers in the started simulation, seeded by the user
+        private SplittableRandom random;
+        // the dispatchers the actors of the started simulation run on
+        private DispatcherProfile dispatcherProfile;
+        // the Aggregator actor of the started simulation
+        private ActorRef<Aggregator.AggregatorEvent> aggregator;
+        // the information about the started simulation, null once its contact network has been released
+        private IndividualProps props;
+        // whether the Cohort actors are sharded and have TickSchedulers of their own
+        private boolean sharded;
+        // how many individuals every sharded Cohort actor covers and how many there are
+        private int cohortSize;
+        private int numberOfCohorts;
+        // the sharded Cohort actors which have been set up at least once
+        private final BitSet setUpCohorts = new BitSet();
+        // the state handed off by sharded Cohort actors which haven't asked for it yet, by index
+        private final Map<Integer, CohortHandedOff> handedOff = new HashMap<>();
+        // the sharded Cohort actors which have asked for their state before it has been handed off
+        private final Set<Integer> awaitingHandOff = new HashSet<>();
+        // whether the Aggregator actor has paused the simulation
+        private boolean paused;
 
         private SimulationBehavior(ActorContext<SimulationCommand> context) {
             super(context);
@@ -120,71 +353,280 @@ public class Simulation {
             ReceiveBuilder<SimulationCommand> builder = newReceiveBuilder();
 
             builder.onMessage(StartSimulation.class, this::startSimulation);
+            builder.onMessage(NetworkGenerated.class, this::networkGenerated);
             builder.onMessage(QueryIndividuals.class, this::queryIndividuals);
             builder.onMessage(StopSimulation.class, this::stopSimulation);
+            builder.onMessage(PauseSimulation.class, this::pauseSimulation);
+            builder.onMessage(ResumeSimulation.class, this::resumeSimulation);
+            builder.onMessage(CohortSetupRequested.class, this::cohortSetupRequested);
+            builder.onMessage(CohortSetUp.class, command -> {
+                setUpCohorts.set(command.getCohort());
+                return Behaviors.same();
+            });
+            builder.onMessage(CohortHandedOff.class, this::cohortHandedOff);
+            builder.onMessage(HandOffTimedOut.class, this::handOffTimedOut);
+            builder.onMessage(CohortLost.class, this::cohortLost);
 
             return builder.build();
         }
 
         /**
          * StartSimulation command handler
-         * On receiving this command a new simulation is started. A command gets scheduled to
-         * stop the simulation after 20 seconds. This acts as a hard limit on how long a simulation
-         * can run. The Aggregator actor and the Individual actors get spawned and the first
-         * interactions are kicked off by infecting a specific number of Individual actors chosen
-         * by the user. The number of people and the probability of infection in the simulation
-         * are chosen by the user as well. These values are contained in the received command.
-         * The Simulation actor keeps track of all its related Individual actors so they can be
-         * queried later on request of a Individual actor.
+         * On receiving this command a new simulation is started. A command gets scheduled to stop
+         * the simulation after simulation.max-duration, 20 seconds by default. This acts as a hard
+         * limit on how long a simulation can run. The Aggregator actor and, depending on the
+         * engine, either the Individual actors or the Cohort actors get spawned or a
+         * ParallelSimulation is set up. The first interactions are kicked off by infecting a
+         * specific number of individuals chosen by the user. The number of people and the
+         * probability of infection in the simulation are chosen by the user as well. These values
+         * are contained in the received command. The individuals are only set up once the contact
+         * network of the simulation has been generated, which doesn't happen on the Simulation
+         * actors thread.
          *
          * @param command the received command
          * @return
          */
         private Behavior<SimulationCommand> startSimulation(StartSimulation command) {
-            getContext().scheduleOnce(Duration.ofMillis(20000),
+            Duration maxDuration = getContext().getSystem().settings().config().getDuration("simulation.max-duration");
+
+            getContext().scheduleOnce(maxDuration,
                     getContext().getSelf(),
                     new Simulation.StopSimulation());
 
-            ActorRef<Aggregator.AggregatorEvent> aggregator = getContext()
+            SimulationStats stats = Statistics.getStatistics().register(getContext().getSelf().path().name());
+            stats.started();
+
+            dispatcherProfile = DispatcherProfile.load(getContext().getSystem(), command.getDispatcherProfile());
+
+            aggregator = getContext()
                     .spawn(Aggregator.create(getContext().getSelf(),
-                                    command.getNumberOfPeople()),
-                            "aggregator" + UUID.randomUUID());
+                                    command.getNumberOfPeople(),
+                                    command.getWireFormat(),
+                                    stats,
+                                    dispatcherProfile),
+                            "aggregator" + UUID.randomUUID(),
+                            dispatcherProfile.aggregatorProps());
+
+            // the network is generated from a seed derived from the seed of the simulation, so it
+            // doesn't take any random numbers away from the rest of the simulation
+            Config config = getContext().getSystem().settings().config();
+            props = new IndividualProps(command.getNumberOfPeople(),
+                    command.getProbabilityOfInfection(),
+                    command.getTopology(),
+                    command.getSeed() * 0x9E3779B97F4A7C15L,
+                    TickScheduler.toTicks(config, config.getDuration("simulation.disease.incubation-period")),
+                    TickScheduler.toTicks(config, config.getDuration("simulation.disease.infectious-period")));
+
+            getContext().pipeToSelf(ContactNetworks.get(getContext().getSystem()).acquire(props),
+                    (network, failure) -> new NetworkGenerated(command, network, failure));
+
+            return Behaviors.same();
+        }
+
+        /**
+         * NetworkGenerated command handler
+         * Sets up the individuals of the started simulation, depending on the engine, and infects
+         * the initially infected individuals. If the network couldn't be generated, the simulation
+         * is stopped.
+         *
+         * @param generated the received command
+         * @return
+         */
+        private Behavior<SimulationCommand> networkGenerated(NetworkGenerated generated) {
+            if (generated.failure != null) {
+                getContext().getLog().error("Generating the contact network failed", generated.failure);
+                return stopSimulation(new StopSimulation());
+            }
+
+            StartSimulation command = generated.command;
+            ContactNetwork network = generated.network;
 
-            IndividualProps props = new IndividualProps(command.getNumberOfPeople(), command.getProbabilityOfInfection());
+            random = new SplittableRandom(command.getSeed());
 
+            // sharded Cohort actors share a TickScheduler per node instead, see TickSchedulers
+            boolean sharded = command.getEngine() == Engine.SHARDED && Cohort.isClustered(getContext().getSystem());
+
+            if (command.getEngine() != Engine.PARALLEL && !sharded) {
+                tickScheduler = TickScheduler.create(getContext().getSystem());
+            }
+
+            switch (command.getEngine()) {
+                case COHORT:
+                    startCohorts(command, aggregator, props, network);
+                    break;
+                case SHARDED:
+                    if (sharded) {
+                        startShardedCohorts(command, aggregator, props);
+                    } else {
+                        startCohorts(command, aggregator, props, network);
+                    }
+                    break;
+                case PARALLEL:
+                    parallelSimulation = new ParallelSimulation(getContext().getSystem(), aggregator, props, network,
+                            random.split());
+                    parallelSimulation.start(chooseInitiallyInfected(command));
+                    break;
+                default:
+                    startIndividuals(command, aggregator, props, network);
+            }
+
+            // the Aggregator actor may have paused the simulation while the network was generated
+            if (paused) throttle();
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Spawns an Individual actor for every individual in the simulation and infects the
+         * initially infected Individual actors. The Simulation actor keeps track of all its related
+         * Individual actors and hands them to every Individual actor before the first infection,
+         * so interactions go directly from one Individual actor to another.
+         *
+         * @param command    the received StartSimulation command
+         * @param aggregator the Aggregator actor of the simulation
+         * @param props      the information about the simulation supplied to Individual actors
+         * @param network    the contact network of the simulation
+         */
+        private void startIndividuals(StartSimulation command,
+                                      ActorRef<Aggregator.AggregatorEvent> aggregator,
+                                      IndividualProps props,
+                                      ContactNetwork network) {
             for (int i = 1; i <= command.getNumberOfPeople(); i++) {
                 ActorRef<Individual.IndividualEvent> individual = getContext()
-                        .spawn(Individual.create(getContext().getSelf(), aggregator, props), getContext()
+                        .spawn(Individual.create(getContext().getSelf(), aggregator, tickScheduler, props,
+                                network, random.split(), i), getContext()
                                 .getSelf()
                                 .path()
-                                .name() + "individual" + i);
+                                .name() + "individual" + i, dispatcherProfile.individualProps("individual"));
                 individuals.add(individual);
             }
 
-            List<Integer> generatedNumbers = new ArrayList<>(List.of(-1));
-            for (int i = 0; i < command.getInitialNumberOfInfected(); i++) {
+            Individual.Neighborhood neighborhood = new Individual.Neighborhood(List.copyOf(individuals));
+            individuals.forEach(individual -> individual.tell(neighborhood));
+
+            for (int index : chooseInitiallyInfected(command)) {
+                individuals.get(index).tell(new Individual.Infected());
+            }
+        }
+
+        /**
+         * Spawns a Cohort actor for every contiguous range of cohort-size individuals and infects
+         * the initially infected individuals, grouped by the Cohort actor owning them.
+         *
+         * @param command    the received StartSimulation command
+         * @param aggregator the Aggregator actor of the simulation
+         * @param props      the information about the simulation supplied to Cohort actors
+         * @param network    the contact network of the simulation
+         */
+        private void startCohorts(StartSimulation command,
+                                  ActorRef<Aggregator.AggregatorEvent> aggregator,
+                                  IndividualProps props,
+                                  ContactNetwork network) {
+            int cohortSize = getContext().getSystem().settings().config().getInt("simulation.cohort-size");
+
+            for (int firstId = 1; firstId <= command.getNumberOfPeople(); firstId += cohortSize) {
+                ActorRef<Cohort.CohortEvent> cohort = getContext()
+                        .spawn(Cohort.create(getContext().getSelf(), aggregator, tickScheduler, props,
+                                        network, random.split(), firstId, cohortSize),
+                                getContext()
+                                        .getSelf()
+                                        .path()
+                                        .name() + "cohort" + cohorts.size(),
+                                dispatcherProfile.individualProps("cohort"));
+                cohorts.add(cohort);
+            }
+
+            Cohort.Cohorts allCohorts = new Cohort.Cohorts(List.copyOf(cohorts));
+            cohorts.forEach(cohort -> cohort.tell(allCohorts));
+
+            infectCohorts(command, cohortSize);
+        }
+
+        /**
+         * Sets up a sharded Cohort actor for every contiguous range of cohort-size individuals,
+         * which are spread across the nodes of the cluster, and infects the initially infected
+         * individuals. Infections are reported to the Aggregator actor on this node. The
+         * Simulation actor registers with the receptionist, so Cohort actors moved to another
+         * node can ask it to be set up again.
+         *
+         * @param command    the received StartSimulation command
+         * @param aggregator the Aggregator actor of the simulation
+         * @param props      the information about the simulation supplied to Cohort actors
+         */
+        private void startShardedCohorts(StartSimulation command,
+                                         ActorRef<Aggregator.AggregatorEvent> aggregator,
+                                         IndividualProps props) {
+            cohortSize = getContext().getSystem().settings().config().getInt("simulation.cohort-size");
+            numberOfCohorts = (command.getNumberOfPeople() + cohortSize - 1) / cohortSize;
+
+            ClusterSharding sharding = ClusterSharding.get(getContext().getSystem());
+            String simulationId = getContext().getSelf().path().name();
+
+            getContext().getSystem().receptionist().tell(Receptionist.register(serviceKey(simulationId),
+                    getContext().getSelf()));
+
+            for (int cohort = 0; cohort < numberOfCohorts; cohort++) {
+                RecipientRef<Cohort.CohortEvent> entity =
+                        sharding.entityRefFor(Cohort.ENTITY_TYPE_KEY, Cohort.entityId(simulationId, cohort));
+
+                entity.tell(new Cohort.Setup(getContext().getSelf(), aggregator, props, random.split().nextLong(),
+                        cohort * cohortSize + 1, cohortSize, numberOfCohorts, null, null));
+                cohorts.add(entity);
+            }
+
+            sharded = true;
+            infectCohorts(command, cohortSize);
+        }
+
+        /**
+         * Infects the initially infected individuals, grouped by the Cohort actor owning them.
+         *
+         * @param command    the received StartSimulation command
+         * @param cohortSize how many individuals every Cohort actor covers
+         */
+        private void infectCohorts(StartSimulation command, int cohortSize) {
+            Map<Integer, List<Integer>> infectedPerCohort = new HashMap<>();
+            for (int index : chooseInitiallyInfected(command)) {
+                infectedPerCohort.computeIfAbsent(index / cohortSize, cohort -> new ArrayList<>()).add(index + 1);
+            }
+
+            infectedPerCohort.forEach((cohort, ids) -> cohorts.get(cohort).tell(
+                    new Cohort.Infected(ids.stream().mapToInt(Integer::intValue).toArray())));
+        }
+
+        /**
+         * Randomly chooses the individuals which are infected from the beginning, based on the
+         * seed of the simulation.
+         *
+         * @param command the received StartSimulation command
+         * @return the indexes (id - 1) of the initially infected individuals
+         */
+        private int[] chooseInitiallyInfected(StartSimulation command) {
+            int[] chosen = new int[command.getInitialNumberOfInfected()];
+            BitSet generatedNumbers = new BitSet(command.getNumberOfPeople());
+
+            for (int i = 0; i < chosen.length; i++) {
                 int next = -1;
-                while (generatedNumbers.contains(next)) {
-                    int bound = individuals.size() - 1;
+                while (next == -1 || generatedNumbers.get(next)) {
+                    int bound = command.getNumberOfPeople() - 1;
                     if (bound >= 1) {
                         next = random.nextInt(bound) + 1;
                     } else {
                         next = 0;
                     }
                 }
-                generatedNumbers.add(next);
-
-                ActorRef<Individual.IndividualEvent> individual = individuals.get(next);
-                individual.tell(new Individual.Infected());
+                generatedNumbers.set(next);
+                chosen[i] = next;
             }
 
-            return Behaviors.same();
+            return chosen;
         }
 
         /**
          * QueryIndividuals command handler
          * On receiving this command the requested ids are collected and the respective actor refs are
-         * sent back to the requester.
+         * sent back to the requester. Only used by Individual actors which haven't received their
+         * neighborhood yet.
          *
          * @param command the received command
          * @return
@@ -208,15 +650,183 @@ public class Simulation {
             return Behaviors.same();
         }
 
+        /**
+         * CohortSetupRequested command handler
+         * Sets up a sharded Cohort actor again with the state it has handed off. If it hasn't
+         * been set up before, its first Setup event is still on its way and nothing is sent. If
+         * its state hasn't arrived yet, it's waited for until simulation.sharding.handoff-timeout,
+         * after which the state is considered lost and the simulation is stopped.
+         *
+         * @param command the received command
+         * @return
+         */
+        private Behavior<SimulationCommand> cohortSetupRequested(CohortSetupRequested command) {
+            int cohort = command.getCohort();
+
+            if (!setUpCohorts.get(cohort)) return Behaviors.same();
+
+            CohortHandedOff state = handedOff.remove(cohort);
+
+            if (state != null) {
+                setUpAgain(state);
+            } else if (awaitingHandOff.add(cohort)) {
+                Duration handOffTimeout = getContext().getSystem().settings().config()
+                        .getDuration("simulation.sharding.handoff-timeout");
+                getContext().scheduleOnce(handOffTimeout, getContext().getSelf(), new HandOffTimedOut(cohort));
+            }
+
+            return Behaviors.same();
+        }
+
+        /**
+         * CohortHandedOff command handler
+         * Keeps the state of a sharded Cohort actor until it asks for it, or sets it up with it
+         * right away if it already has.
+         *
+         * @param command the received command
+         * @return
+         */
+        private Behavior<SimulationCommand> cohortHandedOff(CohortHandedOff command) {
+            if (awaitingHandOff.remove(command.getCohort())) {
+                setUpAgain(command);
+            } else {
+                handedOff.put(command.getCohort(), command);
+            }
+
+            return Behaviors.same();
+        }
+
+        /**
+         * Sends a sharded Cohort actor the Setup event along with the state it has handed off, and
+         * pauses it if the simulation is paused.
+         *
+         * @param state the handed off state
+         */
+        private void setUpAgain(CohortHandedOff state) {
+            RecipientRef<Cohort.CohortEvent> entity = cohorts.get(state.getCohort());
+
+            entity.tell(new Cohort.Setup(getContext().getSelf(), aggregator, props, random.split().nextLong(),
+                    state.getCohort() * cohortSize + 1, cohortSize, numberOfCohorts, state.getGroups(),
+                    state.getNumberOfInteractions()));
+
+            if (paused) entity.tell(Cohort.Throttle.PAUSE);
+        }
+
+        /**
+         * HandOffTimedOut command handler
+         * Stops the simulation if the state of the sharded Cohort actor still hasn't arrived.
+         *
+         * @param command the received command
+         * @return
+         */
+        private Behavior<SimulationCommand> handOffTimedOut(HandOffTimedOut command) {
+            if (!awaitingHandOff.contains(command.cohort)) return Behaviors.same();
+
+            getContext().getLog().error("The state of Cohort actor {} has been lost, stopping the simulation",
+                    command.cohort);
+            return stopSimulation(new StopSimulation());
+        }
+
+        /**
+         * CohortLost command handler
+         * Stops the simulation, as one of its sharded Cohort actors can't go on.
+         *
+         * @param command the received command
+         * @return
+         */
+        private Behavior<SimulationCommand> cohortLost(CohortLost command) {
+            getContext().getLog().error("Cohort actor {} can't be set up, stopping the simulation",
+                    command.getCohort());
+            return stopSimulation(new StopSimulation());
+        }
+
+        /**
+         * PauseSimulation command handler
+         * Holds back the interactions of the simulation until it's resumed.
+         *
+         * @param command the received command
+         * @return
+         */
+        private Behavior<SimulationCommand> pauseSimulation(PauseSimulation command) {
+            paused = true;
+            throttle();
+            return Behaviors.same();
+        }
+
+        /**
+         * ResumeSimulation command handler
+         * Lets the interactions of the paused simulation happen again.
+         *
+         * @param command the received command
+         * @return
+         */
+        private Behavior<SimulationCommand> resumeSimulation(ResumeSimulation command) {
+            paused = false;
+            throttle();
+            return Behaviors.same();
+        }
+
+        /**
+         * Pauses or resumes whatever delivers the interactions of the simulation, depending on
+         * the engine. Sharded Cohort actors pause or resume the TickScheduler of their node.
+         */
+        private void throttle() {
+            if (tickScheduler != null) {
+                if (paused) tickScheduler.pause();
+                else tickScheduler.resume();
+            }
+
+            if (parallelSimulation != null) {
+                if (paused) parallelSimulation.pause();
+                else parallelSimulation.resume();
+            }
+
+            if (sharded) {
+                Cohort.Throttle throttle = paused ? Cohort.Throttle.PAUSE : Cohort.Throttle.RESUME;
+                cohorts.forEach(cohort -> cohort.tell(throttle));
+            }
+        }
+
         /**
          * StopSimulation command handler
-         * On receiving this command the started simulation is stopped.
+         * On receiving this command the started simulation is stopped. Everything but the
+         * Aggregator actor is stopped right away, the Simulation actor stops once the Aggregator
+         * actor has published the end of the simulation, or after
+         * simulation.aggregator.completion-timeout if it doesn't, e.g. because RabbitMQ doesn't
+         * confirm the remaining batches. The Aggregator actor aborts its stream once it's stopped.
          *
          * @param command the received command
          * @return
          */
         private Behavior<SimulationCommand> stopSimulation(StopSimulation command) {
-            return Behaviors.stopped();
+            if (parallelSimulation != null) parallelSimulation.stop();
+            if (tickScheduler != null) tickScheduler.cancel();
+
+            if (props != null) {
+                ContactNetworks.get(getContext().getSystem()).release(props);
+                props = null;
+            }
+
+            // sharded Cohort actors aren't children of the Simulation actor, so they are stopped explicitly
+            cohorts.forEach(cohort -> cohort.tell(Cohort.Stop.INSTANCE));
+
+            getContext().getChildren().forEach(child -> {
+                if (!child.equals(aggregator)) getContext().stop(child);
+            });
+
+            if (aggregator == null) return Behaviors.stopped();
+
+            getContext().watch(aggregator);
+            aggregator.tell(Aggregator.Complete.INSTANCE);
+
+            Duration completionTimeout = getContext().getSystem().settings().config()
+                    .getDuration("simulation.aggregator.completion-timeout");
+            getContext().scheduleOnce(completionTimeout, getContext().getSelf(), AggregatorTimedOut.INSTANCE);
+
+            return Behaviors.receive(SimulationCommand.class)
+                    .onMessageEquals(AggregatorTimedOut.INSTANCE, Behaviors::stopped)
+                    .onSignal(Terminated.class, terminated -> Behaviors.stopped())
+                    .build();
         }
     }
 }
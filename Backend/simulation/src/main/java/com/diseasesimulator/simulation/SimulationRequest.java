@@ -5,14 +5,32 @@ public class SimulationRequest {
     private int initialNumberOfInfected;
     private int numberOfPeople; // how many Individual actors are to be simulated
     private int probabilityOfInfection; // how likely infections should be on interactions
+    private Engine engine; // how the individuals are to be simulated, Individual actors by default
+    private WireFormat wireFormat; // how infections are to be published, JSON by default
+    private Long seed; // the seed of the random numbers in the simulation, random by default
+    private String dispatcherProfile; // which dispatchers the actors run on, the configured default by default
+    private String simulationId; // the id, and queue name, chosen by the client, generated by default
+    private Topology topology; // how the contact network is to be shaped, Window by default
 
     public SimulationRequest() {
     }
 
     public SimulationRequest(int initialNumberOfInfected, int numberOfPeople, int probabilityOfInfection) {
+        this(initialNumberOfInfected, numberOfPeople, probabilityOfInfection, Engine.INDIVIDUAL);
+    }
+
+    public SimulationRequest(int initialNumberOfInfected, int numberOfPeople, int probabilityOfInfection,
+                             Engine engine) {
+        this(initialNumberOfInfected, numberOfPeople, probabilityOfInfection, engine, null);
+    }
+
+    public SimulationRequest(int initialNumberOfInfected, int numberOfPeople, int probabilityOfInfection,
+                             Engine engine, Long seed) {
         this.initialNumberOfInfected = initialNumberOfInfected;
         this.numberOfPeople = numberOfPeople;
         this.probabilityOfInfection = probabilityOfInfection;
+        this.engine = engine;
+        this.seed = seed;
     }
 
     public int getInitialNumberOfInfected() {
@@ -26,4 +44,28 @@ public class SimulationRequest {
     public int getProbabilityOfInfection() {
         return probabilityOfInfection;
     }
+
+    public Engine getEngine() {
+        return engine == null ? Engine.INDIVIDUAL : engine;
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat == null ? WireFormat.JSON : wireFormat;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public String getDispatcherProfile() {
+        return dispatcherProfile;
+    }
+
+    public String getSimulationId() {
+        return simulationId;
+    }
+
+    public Topology getTopology() {
+        return topology == null ? Topology.WINDOW : topology;
+    }
 }
@@ -0,0 +1,187 @@
+package com.diseasesimulator.simulation;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SimulationStats class holds the statistics of a single simulation. The statistics are
+ * updated by the actors of the simulation and their mailboxes and can be read from any thread.
+ */
+public class SimulationStats {
+
+    private final String simulationId;
+
+    private final LongAdder offered = new LongAdder(); // infections handed to the Aggregator actors stream
+    private final LongAdder published = new LongAdder(); // infections confirmed by RabbitMQ
+    private final LongAdder dropped = new LongAdder(); // offered infections which couldn't be published
+    private final LongAdder rejected = new LongAdder(); // infections which couldn't be offered at all
+    private final LongAdder recovered = new LongAdder(); // individuals which have recovered
+    private final LongAdder pauses = new LongAdder(); // how often the Aggregator actor has paused the simulation
+
+    // messages received by the actors of the simulation, by message type
+    private final Map<Class<?>, LongAdder> messages = new ConcurrentHashMap<>();
+    // messages waiting in the mailboxes of the actors of the simulation, by kind of actor
+    private final Map<String, LongAdder> mailboxDepths = new ConcurrentHashMap<>();
+    private final LongAdder liveActors = new LongAdder();
+
+    // points in time in System.nanoTime(), 0 if they haven't been reached yet
+    private volatile long startedAt;
+    private volatile long firstInfectionAt;
+    private volatile long ninetyNinePercentInfectedAt;
+
+    public SimulationStats(String simulationId) {
+        this.simulationId = simulationId;
+    }
+
+    public void offered(int numberOfInfections) {
+        offered.add(numberOfInfections);
+    }
+
+    public void published(int numberOfInfections) {
+        published.add(numberOfInfections);
+    }
+
+    public void dropped(int numberOfInfections) {
+        dropped.add(numberOfInfections);
+    }
+
+    public void rejected(int numberOfInfections) {
+        rejected.add(numberOfInfections);
+    }
+
+    public void recovered(int numberOfRecovered) {
+        recovered.add(numberOfRecovered);
+    }
+
+    public void paused() {
+        pauses.increment();
+    }
+
+    public void started() {
+        if (startedAt == 0) startedAt = System.nanoTime();
+    }
+
+    public void firstInfection() {
+        if (firstInfectionAt == 0) firstInfectionAt = System.nanoTime();
+    }
+
+    public void ninetyNinePercentInfected() {
+        if (ninetyNinePercentInfectedAt == 0) ninetyNinePercentInfectedAt = System.nanoTime();
+    }
+
+    public void actorStarted() {
+        liveActors.increment();
+    }
+
+    public void actorStopped() {
+        liveActors.decrement();
+    }
+
+    /**
+     * Returns the counter of the mailbox depth of a kind of actor, shared by all mailboxes of
+     * that kind in the simulation.
+     *
+     * @param kind the kind of actor
+     * @return the counter
+     */
+    public LongAdder mailboxDepth(String kind) {
+        return mailboxDepths.computeIfAbsent(kind, k -> new LongAdder());
+    }
+
+    /**
+     * Counts a message received by an actor of the simulation.
+     *
+     * @param type the type of the message
+     */
+    public void received(Class<?> type) {
+        LongAdder counter = messages.get(type);
+
+        if (counter == null) counter = messages.computeIfAbsent(type, t -> new LongAdder());
+
+        counter.increment();
+    }
+
+    public String getSimulationId() {
+        return simulationId;
+    }
+
+    public long getOffered() {
+        return offered.sum();
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getRecovered() {
+        return recovered.sum();
+    }
+
+    public long getPauses() {
+        return pauses.sum();
+    }
+
+    /**
+     * @return how many offered infections are neither published nor dropped yet
+     */
+    public long getInFlight() {
+        return Math.max(0, getOffered() - getPublished() - getDropped());
+    }
+
+    public long getLiveActors() {
+        return liveActors.sum();
+    }
+
+    /**
+     * @return the number of messages received, by the simple name of the message type
+     */
+    public Map<String, Long> getMessages() {
+        Map<String, Long> messages = new TreeMap<>();
+        this.messages.forEach((type, counter) -> messages.merge(type.getSimpleName(), counter.sum(), Long::sum));
+        return messages;
+    }
+
+    /**
+     * @return the number of messages waiting in mailboxes, by kind of actor
+     */
+    public Map<String, Long> getMailboxDepths() {
+        Map<String, Long> mailboxDepths = new TreeMap<>();
+        this.mailboxDepths.forEach((kind, depth) -> mailboxDepths.put(kind, Math.max(0, depth.sum())));
+        return mailboxDepths;
+    }
+
+    /**
+     * @return the milliseconds from the start of the simulation to the first infection, null if
+     * nobody has been infected yet
+     */
+    public Long getMillisToFirstInfection() {
+        return millisSinceStart(firstInfectionAt);
+    }
+
+    /**
+     * @return the milliseconds from the start of the simulation until 99% of the individuals have
+     * been infected, null if that hasn't happened yet
+     */
+    public Long getMillisToNinetyNinePercentInfected() {
+        return millisSinceStart(ninetyNinePercentInfectedAt);
+    }
+
+    private Long millisSinceStart(long time) {
+        long startedAt = this.startedAt;
+
+        if (startedAt == 0 || time == 0) return null;
+
+        return TimeUnit.NANOSECONDS.toMillis(time - startedAt);
+    }
+}
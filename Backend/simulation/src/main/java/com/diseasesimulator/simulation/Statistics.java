@@ -0,0 +1,55 @@
+package com.diseasesimulator.simulation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The Statistics class is used to access the statistics of the most recently started simulations.
+ */
+public class Statistics {
+
+    private static final int MAX_SIMULATIONS = 1000; // how many simulations are kept track of
+
+    private final Map<String, SimulationStats> simulations = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SimulationStats> eldest) {
+            return size() > MAX_SIMULATIONS;
+        }
+    };
+
+    private static final class InstanceHolder {
+        static final Statistics INSTANCE = new Statistics();
+    }
+
+    private Statistics() {
+    }
+
+    public static Statistics getStatistics() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Creates the statistics for a new simulation, or returns them if they have already been
+     * created by the simulation or by the mailbox of one of its actors.
+     *
+     * @param simulationId the id of the simulation
+     * @return the statistics of the simulation
+     */
+    public synchronized SimulationStats register(String simulationId) {
+        return simulations.computeIfAbsent(simulationId, SimulationStats::new);
+    }
+
+    public synchronized Optional<SimulationStats> get(String simulationId) {
+        return Optional.ofNullable(simulations.get(simulationId));
+    }
+
+    /**
+     * @return the statistics of every simulation kept track of
+     */
+    public synchronized Collection<SimulationStats> getAll() {
+        return new ArrayList<>(simulations.values());
+    }
+}
@@ -0,0 +1,180 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.RecipientRef;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TickScheduler class delays the interactions of a simulation. Instead of scheduling a timer
+ * per interaction, interactions are collected per slot of tick-interval and every slot is
+ * delivered in bulk by a single recurring task, after having waited for at least one full slot.
+ * If pacing is disabled interactions are delivered right away. Messages which are delayed for a
+ * number of ticks, such as the transitions between the groups of individuals, are kept in a
+ * TimingWheel advanced by the same task, regardless of pacing. The task runs on the pacing thread
+ * of the TickSchedulers extension rather than on the scheduler of the actor system, which only
+ * runs due tasks every akka.scheduler.tick-duration. While the TickScheduler is paused, e.g.
+ * because the Aggregator actor can't keep up with the infections, no ticks pass and every message
+ * is held back, with or without pacing, until it's resumed.
+ */
+public class TickScheduler {
+
+    private final boolean pacing;
+    private final ConcurrentLinkedQueue<Delivery<?>> deliveries = new ConcurrentLinkedQueue<>();
+    // delayed messages which haven't been added to the wheel yet, the wheel is only used by the recurring task
+    private final ConcurrentLinkedQueue<Delivery<?>> delayed = new ConcurrentLinkedQueue<>();
+    private final TimingWheel<Delivery<?>> wheel = new TimingWheel<>();
+    private final ScheduledFuture<?> tick;
+
+    private volatile long slot; // the number of the current slot
+    private volatile boolean paused; // whether messages are held back
+
+    private TickScheduler() {
+        this.pacing = false;
+        this.tick = null;
+    }
+
+    private TickScheduler(ScheduledExecutorService timer, boolean pacing, Duration tickInterval) {
+        this.pacing = pacing;
+        this.tick = timer.scheduleAtFixedRate(this::tick, tickInterval.toNanos(), tickInterval.toNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates the TickScheduler of a simulation based on simulation.pacing.
+     *
+     * @param system the actor system the simulation runs in
+     * @return the created TickScheduler
+     */
+    public static TickScheduler create(ActorSystem<?> system) {
+        Config config = system.settings().config().getConfig("simulation.pacing");
+
+        return new TickScheduler(TickSchedulers.get(system).timer(), config.getBoolean("enabled"),
+                config.getDuration("tick-interval"));
+    }
+
+    /**
+     * @param config the config of the actor system
+     * @param period a period of time
+     * @return how many ticks of simulation.pacing.tick-interval cover the period, at least one
+     */
+    public static int toTicks(Config config, Duration period) {
+        Duration tickInterval = config.getDuration("simulation.pacing.tick-interval");
+
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, period.toNanos() / tickInterval.toNanos()));
+    }
+
+    /**
+     * Creates a TickScheduler which delivers messages right away, regardless of simulation.pacing
+     * and of how long they're delayed.
+     *
+     * @return the created TickScheduler
+     */
+    public static TickScheduler immediate() {
+        return new TickScheduler();
+    }
+
+    /**
+     * Schedules the message to be sent to the target with the next but one tick, or sends it
+     * right away if pacing is disabled.
+     *
+     * @param target  who receives the message
+     * @param message the message
+     * @param <T>     the type of messages the target accepts
+     */
+    public <T> void schedule(RecipientRef<T> target, T message) {
+        if (!pacing && !paused) {
+            target.tell(message);
+            return;
+        }
+
+        deliveries.offer(new Delivery<>(target, message, slot));
+    }
+
+    /**
+     * Schedules the message to be sent to the target once the supplied number of ticks have
+     * passed, or sends it right away if the TickScheduler is immediate.
+     *
+     * @param target  who receives the message
+     * @param message the message
+     * @param ticks   how many ticks the message is delayed
+     * @param <T>     the type of messages the target accepts
+     */
+    public <T> void scheduleAfter(RecipientRef<T> target, T message, int ticks) {
+        if (tick == null) {
+            target.tell(message);
+            return;
+        }
+
+        delayed.offer(new Delivery<>(target, message, slot + ticks));
+    }
+
+    /**
+     * Holds back every message until resumed. Messages scheduled in the meantime are kept, delayed
+     * messages are delayed by as long as the TickScheduler has been paused. An immediate
+     * TickScheduler isn't paused.
+     */
+    public void pause() {
+        if (tick != null) paused = true;
+    }
+
+    /**
+     * Delivers messages again, starting with the next tick.
+     */
+    public void resume() {
+        paused = false;
+    }
+
+    /**
+     * Stops delivering messages, undelivered messages are discarded.
+     */
+    public void cancel() {
+        if (tick != null) tick.cancel(false);
+        deliveries.clear();
+        delayed.clear();
+    }
+
+    /**
+     * Starts the next slot and delivers every message scheduled before the previous slot as well
+     * as every delayed message which is due. Without pacing, messages held back while paused are
+     * delivered right away. Only ever called by the recurring task, one call at a time.
+     */
+    private void tick() {
+        if (paused) return;
+
+        long current = ++slot;
+
+        Delivery<?> delivery = deliveries.peek();
+        while (delivery != null && (!pacing || delivery.slot <= current - 2)) {
+            deliveries.poll().deliver();
+            delivery = deliveries.peek();
+        }
+
+        for (delivery = delayed.poll(); delivery != null; delivery = delayed.poll()) {
+            wheel.schedule(delivery, delivery.slot);
+        }
+
+        wheel.advance(Delivery::deliver);
+    }
+
+    private static final class Delivery<T> {
+        private final RecipientRef<T> target;
+        private final T message;
+        private final long slot; // the slot the message has been scheduled in, or is due in if delayed
+
+        private Delivery(RecipientRef<T> target, T message, long slot) {
+            this.target = target;
+            this.message = message;
+            this.slot = slot;
+        }
+
+        private void deliver() {
+            target.tell(message);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.diseasesimulator.simulation;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The TickSchedulers extension shares a TickScheduler between the sharded Cohort actors of a
+ * simulation on the same node, so a node runs a single recurring task per simulation rather than
+ * one per Cohort actor. A TickScheduler is created once the first Cohort actor of its simulation
+ * acquires it and cancelled once the last one has released it. Every TickScheduler of the node,
+ * shared or not, is driven by the single pacing thread of the extension, so ticks are as even as
+ * simulation.pacing.tick-interval asks for without the scheduler of the actor system having to
+ * tick any faster than it does by default.
+ */
+public class TickSchedulers implements Extension {
+
+    private final ActorSystem<?> system;
+    private final ScheduledExecutorService timer; // the pacing thread, shut down with the actor system
+
+    // the shared TickSchedulers by simulation id
+    private final Map<String, Shared> schedulers = new HashMap<>();
+
+    private TickSchedulers(ActorSystem<?> system) {
+        this.system = system;
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, system.name() + "-pacing");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        system.getWhenTerminated().thenRun(timer::shutdownNow);
+    }
+
+    public static TickSchedulers get(ActorSystem<?> system) {
+        return Id.INSTANCE.apply(system);
+    }
+
+    /**
+     * @return the timer driving the TickSchedulers and the paced steps of ParallelSimulations
+     */
+    public ScheduledExecutorService timer() {
+        return timer;
+    }
+
+    /**
+     * Returns the TickScheduler of a simulation on this node, creating it if no Cohort actor of
+     * the simulation has acquired it yet. Every call has to be followed by a call to release.
+     *
+     * @param simulationId the id of the simulation
+     * @return the TickScheduler of the simulation
+     */
+    public synchronized TickScheduler acquire(String simulationId) {
+        Shared shared = schedulers.computeIfAbsent(simulationId, id -> new Shared(TickScheduler.create(system)));
+        shared.users++;
+        return shared.scheduler;
+    }
+
+    /**
+     * Releases the TickScheduler of a simulation, it's cancelled once it has been released as
+     * often as it has been acquired.
+     *
+     * @param simulationId the id of the simulation
+     */
+    public synchronized void release(String simulationId) {
+        Shared shared = schedulers.get(simulationId);
+
+        if (shared == null || --shared.users > 0) return;
+
+        schedulers.remove(simulationId);
+        shared.scheduler.cancel();
+    }
+
+    private static final class Shared {
+
+        private final TickScheduler scheduler;
+        private int users; // how many Cohort actors have acquired the scheduler
+
+        private Shared(TickScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+    }
+
+    public static final class Id extends ExtensionId<TickSchedulers> {
+
+        private static final Id INSTANCE = new Id();
+
+        private Id() {
+        }
+
+        @Override
+        public TickSchedulers createExtension(ActorSystem<?> system) {
+            return new TickSchedulers(system);
+        }
+    }
+}
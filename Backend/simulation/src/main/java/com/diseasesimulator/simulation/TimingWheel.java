@@ -0,0 +1,151 @@
+package com.diseasesimulator.simulation;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The TimingWheel class keeps timers which expire at a given tick. Timers are kept in a hierarchy
+ * of levels with 64 slots each, a slot of a level covers 64 times as many ticks as a slot of the
+ * level below. Timers which expire soon are kept in the lowest level, the others are moved down
+ * a level whenever the slot they're kept in is reached. So scheduling and expiring a timer costs
+ * O(1), no matter how many timers are pending. Timers which expire later than the highest level
+ * covers are kept in it until they're in reach, so every timer expires exactly at its deadline.
+ * A TimingWheel isn't thread safe, it's only ever used by a single thread at a time.
+ *
+ * @param <T> the type of the timers
+ */
+public class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS; // how many slots a level has
+    private static final int LEVELS = 4;
+
+    private final Slot[][] levels = new Slot[LEVELS][SLOTS];
+
+    private Slot spare = new Slot(); // swapped with the slot being expired or moved down a level
+    private long time; // the tick the wheel has been advanced to
+    private int size; // how many timers are pending
+
+    public TimingWheel() {
+        for (Slot[] level : levels) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                level[slot] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * Schedules a timer, timers which are already due expire with the next tick.
+     *
+     * @param timer    the timer
+     * @param deadline the tick the timer expires at
+     */
+    public void schedule(T timer, long deadline) {
+        add(timer, Math.max(deadline, time + 1));
+        size++;
+    }
+
+    /**
+     * Advances the wheel by a tick and expires the timers which are due.
+     *
+     * @param expired receives the expired timers
+     */
+    @SuppressWarnings("unchecked")
+    public void advance(Consumer<T> expired) {
+        time++;
+
+        // moves the timers of the reached slots down, starting with the highest level
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((time & ((1L << (SLOT_BITS * level)) - 1)) != 0) continue;
+
+            Slot slot = take(level);
+            for (int i = 0; i < slot.size; i++) {
+                add(slot.timers[i], slot.deadlines[i]);
+            }
+            slot.clear();
+        }
+
+        Slot slot = take(0);
+        size -= slot.size;
+        for (int i = 0; i < slot.size; i++) {
+            expired.accept((T) slot.timers[i]);
+        }
+        slot.clear();
+    }
+
+    /**
+     * @return the tick the wheel has been advanced to
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return whether no timers are pending
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds a timer to the lowest level whose slots cover its deadline. Timers beyond the highest
+     * level are added to the slot of the highest level matching their deadline, once that slot is
+     * reached they're added again.
+     *
+     * @param timer    the timer
+     * @param deadline the tick the timer expires at, not earlier than the current tick
+     */
+    private void add(Object timer, long deadline) {
+        long ticks = deadline - time;
+        int level = 0;
+
+        while (level < LEVELS - 1 && ticks >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+
+        levels[level][(int) (deadline >>> (SLOT_BITS * level)) & (SLOTS - 1)].add(timer, deadline);
+    }
+
+    /**
+     * Replaces the reached slot of a level with the empty spare slot, so timers can be added to
+     * the level while the timers of the reached slot are handled.
+     *
+     * @param level the level
+     * @return the reached slot, which becomes the spare slot once cleared
+     */
+    private Slot take(int level) {
+        int index = (int) (time >>> (SLOT_BITS * level)) & (SLOTS - 1);
+
+        Slot slot = levels[level][index];
+        levels[level][index] = spare;
+        spare = slot;
+
+        return slot;
+    }
+
+    /**
+     * The timers of a slot and their deadlines.
+     */
+    private static final class Slot {
+
+        private Object[] timers = new Object[0];
+        private long[] deadlines = new long[0];
+        private int size;
+
+        private void add(Object timer, long deadline) {
+            if (size == timers.length) {
+                timers = Arrays.copyOf(timers, Math.max(4, size * 2));
+                deadlines = Arrays.copyOf(deadlines, timers.length);
+            }
+
+            timers[size] = timer;
+            deadlines[size] = deadline;
+            size++;
+        }
+
+        private void clear() {
+            Arrays.fill(timers, 0, size, null);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.diseasesimulator.simulation;
+
+import com.typesafe.config.Config;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * The Topology enum represents how the contact network of a simulation is shaped. Window chooses
+ * interaction partners "near" the id of an individual without storing a network. The others
+ * generate a network once per simulation, which is stored as a CsrContactNetwork, configured in
+ * simulation.topologies:
+ * Watts-Strogatz connects every individual to its nearest neighbors on a ring and rewires some of
+ * the connections to random individuals, which leads to a small world.
+ * Barabasi-Albert attaches every individual to individuals chosen proportional to how many
+ * contacts they already have, which leads to a few individuals with very many contacts.
+ * Household connects every individual to the members of its household, which are individuals with
+ * consecutive ids, and to a couple of coworkers in a randomly assigned workplace.
+ * Networks are generated from a seed, so a seed always leads to the same network.
+ */
+public enum Topology {
+    WINDOW {
+        @Override
+        ContactNetwork generate(int numberOfPeople, long seed, Config config) {
+            return ContactNetwork.window(numberOfPeople);
+        }
+    },
+    WATTS_STROGATZ {
+        @Override
+        ContactNetwork generate(int numberOfPeople, long seed, Config config) {
+            int halfDegree = Math.max(1, Math.min(config.getInt("degree") / 2, (numberOfPeople - 1) / 2));
+            double rewiringProbability = config.getDouble("rewiring-probability");
+
+            int numberOfEdges = numberOfPeople * halfDegree;
+            int[] from = new int[numberOfEdges];
+            int[] to = new int[numberOfEdges];
+
+            // every chunk of individuals generates its edges with its own stream of random numbers
+            // into its own positions, so the network doesn't depend on the order chunks are generated in
+            int numberOfChunks = (numberOfPeople + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            SplittableRandom[] randoms = split(new SplittableRandom(seed), numberOfChunks);
+
+            IntStream.range(0, numberOfChunks).parallel().forEach(chunk -> {
+                SplittableRandom random = randoms[chunk];
+                int last = Math.min((chunk + 1) * CHUNK_SIZE, numberOfPeople);
+
+                for (int id = chunk * CHUNK_SIZE + 1; id <= last; id++) {
+                    for (int distance = 1; distance <= halfDegree; distance++) {
+                        int edge = (id - 1) * halfDegree + distance - 1;
+
+                        from[edge] = id;
+                        to[edge] = random.nextDouble() < rewiringProbability
+                                ? random.nextInt(1, numberOfPeople + 1)
+                                : (id - 1 + distance) % numberOfPeople + 1;
+                    }
+                }
+            });
+
+            return CsrContactNetwork.fromEdges(numberOfPeople, from, to, numberOfEdges);
+        }
+    },
+    BARABASI_ALBERT {
+        @Override
+        ContactNetwork generate(int numberOfPeople, long seed, Config config) {
+            int edgesPerIndividual = Math.max(1, Math.min(config.getInt("edges-per-individual"), numberOfPeople - 1));
+            SplittableRandom random = new SplittableRandom(seed);
+
+            // every edge is stored as its two ends, choosing a random end of a random edge chooses
+            // individuals proportional to how many contacts they have
+            int numberOfEdges = (numberOfPeople - 1) * edgesPerIndividual;
+            int[] from = new int[numberOfEdges];
+            int[] to = new int[numberOfEdges];
+            int[] ends = new int[2 * numberOfEdges];
+            int edge = 0;
+
+            // the first individuals are connected to the first one
+            for (int id = 2; id <= edgesPerIndividual + 1 && id <= numberOfPeople; id++, edge++) {
+                from[edge] = id;
+                to[edge] = 1;
+                ends[2 * edge] = id;
+                ends[2 * edge + 1] = 1;
+            }
+
+            // further individuals attach to the existing ones, which can't be done in parallel
+            for (int id = edgesPerIndividual + 2; id <= numberOfPeople; id++) {
+                int existingEnds = 2 * edge;
+
+                for (int i = 0; i < edgesPerIndividual; i++, edge++) {
+                    from[edge] = id;
+                    to[edge] = ends[random.nextInt(existingEnds)];
+                    ends[2 * edge] = id;
+                    ends[2 * edge + 1] = to[edge];
+                }
+            }
+
+            return CsrContactNetwork.fromEdges(numberOfPeople, from, to, edge);
+        }
+    },
+    HOUSEHOLD {
+        @Override
+        ContactNetwork generate(int numberOfPeople, long seed, Config config) {
+            int householdSize = config.getInt("household-size");
+            int workplaceSize = config.getInt("workplace-size");
+            int workplaceContacts = config.getInt("workplace-contacts");
+
+            SplittableRandom random = new SplittableRandom(seed);
+
+            // assigns the individuals to workplaces randomly, workplaces are consecutive
+            // positions within the shuffled ids
+            int[] shuffled = new int[numberOfPeople];
+            for (int i = 0; i < numberOfPeople; i++) {
+                shuffled[i] = i + 1;
+            }
+            for (int i = numberOfPeople - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int id = shuffled[i];
+                shuffled[i] = shuffled[j];
+                shuffled[j] = id;
+            }
+
+            // everyone is connected to the later members of its household and to a couple of coworkers
+            int numberOfEdges = numberOfPeople * (householdSize - 1) + numberOfPeople * workplaceContacts;
+            int[] from = new int[numberOfEdges];
+            int[] to = new int[numberOfEdges];
+
+            int numberOfChunks = (numberOfPeople + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            SplittableRandom[] randoms = split(random, numberOfChunks);
+            int[] numberOfChunkEdges = new int[numberOfChunks];
+
+            IntStream.range(0, numberOfChunks).parallel().forEach(chunk -> {
+                SplittableRandom chunkRandom = randoms[chunk];
+                int first = chunk * CHUNK_SIZE;
+                int last = Math.min(first + CHUNK_SIZE, numberOfPeople);
+                int edge = first * (householdSize - 1 + workplaceContacts);
+
+                for (int index = first; index < last; index++) {
+                    int id = index + 1;
+                    int lastMember = Math.min((index / householdSize + 1) * householdSize, numberOfPeople);
+
+                    for (int member = id + 1; member <= lastMember; member++, edge++) {
+                        from[edge] = id;
+                        to[edge] = member;
+                    }
+
+                    int firstCoworker = index / workplaceSize * workplaceSize;
+                    int lastCoworker = Math.min(firstCoworker + workplaceSize, numberOfPeople);
+
+                    for (int i = 0; i < workplaceContacts && lastCoworker - firstCoworker > 1; i++, edge++) {
+                        from[edge] = shuffled[index];
+                        to[edge] = shuffled[chunkRandom.nextInt(firstCoworker, lastCoworker)];
+                    }
+                }
+
+                numberOfChunkEdges[chunk] = edge - first * (householdSize - 1 + workplaceContacts);
+            });
+
+            // chunks leave gaps behind where households or workplaces have been smaller, which
+            // are closed before building the network
+            int numberOfGeneratedEdges = 0;
+            for (int chunk = 0; chunk < numberOfChunks; chunk++) {
+                int start = chunk * CHUNK_SIZE * (householdSize - 1 + workplaceContacts);
+
+                System.arraycopy(from, start, from, numberOfGeneratedEdges, numberOfChunkEdges[chunk]);
+                System.arraycopy(to, start, to, numberOfGeneratedEdges, numberOfChunkEdges[chunk]);
+                numberOfGeneratedEdges += numberOfChunkEdges[chunk];
+            }
+
+            return CsrContactNetwork.fromEdges(numberOfPeople, from, to, numberOfGeneratedEdges);
+        }
+    };
+
+    private static final int CHUNK_SIZE = 65536; // how many individuals are covered by a single task
+
+    /**
+     * Generates the contact network of a simulation.
+     *
+     * @param numberOfPeople how many individuals are in the simulation
+     * @param seed           the seed of the network
+     * @param config         the config of the topology in simulation.topologies
+     * @return the network
+     */
+    abstract ContactNetwork generate(int numberOfPeople, long seed, Config config);
+
+    /**
+     * @return the path of the config of the topology, e.g. watts-strogatz for WATTS_STROGATZ
+     */
+    String configPath() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    private static SplittableRandom[] split(SplittableRandom random, int numberOfRandoms) {
+        SplittableRandom[] randoms = new SplittableRandom[numberOfRandoms];
+        for (int i = 0; i < numberOfRandoms; i++) {
+            randoms[i] = random.split();
+        }
+        return randoms;
+    }
+}
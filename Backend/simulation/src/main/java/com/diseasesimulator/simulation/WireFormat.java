@@ -0,0 +1,68 @@
+package com.diseasesimulator.simulation;
+
+import akka.util.ByteString;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The WireFormat enum represents the format batches of infections are published in.
+ * JSON publishes an array containing an object per infection, Binary publishes a fixed-width
+ * record per infection consisting of the ids of who infected the individual and the infected
+ * individual and the number of interactions before infection, each as a big-endian int32.
+ */
+public enum WireFormat {
+    JSON("application/json") {
+        @Override
+        public ByteString encode(List<Aggregator.NewInfected> batch) {
+            StringBuilder message = new StringBuilder(batch.size() * 64).append('[');
+
+            for (int i = 0; i < batch.size(); i++) {
+                Aggregator.NewInfected infection = batch.get(i);
+
+                if (i > 0) message.append(',');
+
+                message.append("{\"from\":").append(infection.getFrom())
+                        .append(",\"infected\":").append(infection.getInfected())
+                        .append(",\"numberOfInteractions\":").append(infection.getNumberOfInteractions())
+                        .append('}');
+            }
+
+            return ByteString.fromString(message.append(']').toString());
+        }
+    },
+    BINARY("application/x.disease-simulator.infection-records") {
+        @Override
+        public ByteString encode(List<Aggregator.NewInfected> batch) {
+            ByteBuffer records = ByteBuffer.allocate(batch.size() * RECORD_SIZE);
+
+            for (Aggregator.NewInfected infection : batch) {
+                records.putInt(infection.getFrom())
+                        .putInt(infection.getInfected())
+                        .putInt(infection.getNumberOfInteractions());
+            }
+
+            return ByteString.fromArrayUnsafe(records.array());
+        }
+    };
+
+    public static final int RECORD_SIZE = 12; // the size of a binary record in bytes
+
+    private final String contentType; // the content type of published messages
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Encodes a batch of infections into the body of a single message.
+     *
+     * @param batch the infections to be published together
+     * @return the message body
+     */
+    public abstract ByteString encode(List<Aggregator.NewInfected> batch);
+}
@@ -0,0 +1,67 @@
+package com.diseasesimulator.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsrContactNetworkTest {
+
+    @Test
+    void storesEveryEdgeAtBothEnds() {
+        CsrContactNetwork network = CsrContactNetwork.fromEdges(4,
+                new int[]{1, 2, 3, 1}, new int[]{2, 3, 1, 4}, 4);
+
+        assertEquals(4, network.getNumberOfPeople());
+        assertEquals(8, network.getNumberOfContacts());
+        assertArrayEquals(new int[]{2, 3, 4}, sorted(network.getContacts(1)));
+        assertArrayEquals(new int[]{1, 3}, sorted(network.getContacts(2)));
+        assertArrayEquals(new int[]{1, 2}, sorted(network.getContacts(3)));
+        assertArrayEquals(new int[]{1}, network.getContacts(4));
+    }
+
+    @Test
+    void skipsSelfLoopsAndKeepsDuplicateEdges() {
+        CsrContactNetwork network = CsrContactNetwork.fromEdges(3,
+                new int[]{1, 2, 1, 2}, new int[]{1, 3, 2, 3}, 4);
+
+        assertArrayEquals(new int[]{2}, network.getContacts(1));
+        assertArrayEquals(new int[]{1, 3, 3}, sorted(network.getContacts(2)));
+        assertArrayEquals(new int[]{2, 2}, network.getContacts(3));
+        assertEquals(6, network.getNumberOfContacts());
+    }
+
+    @Test
+    void samplesOnlyContacts() {
+        CsrContactNetwork network = CsrContactNetwork.fromEdges(5,
+                new int[]{1, 1}, new int[]{2, 3}, 2);
+        SplittableRandom random = new SplittableRandom(42);
+        int[] contacts = new int[ContactWindow.MAX_NUMBER_OF_CONTACTS];
+
+        for (int i = 0; i < 1000; i++) {
+            int numberOfContacts = network.sample(1, random, contacts);
+
+            assertTrue(numberOfContacts >= 2 && numberOfContacts <= ContactWindow.MAX_NUMBER_OF_CONTACTS);
+            for (int contact = 0; contact < numberOfContacts; contact++) {
+                assertTrue(contacts[contact] == 2 || contacts[contact] == 3);
+            }
+        }
+    }
+
+    @Test
+    void samplesNobodyWithoutContacts() {
+        CsrContactNetwork network = CsrContactNetwork.fromEdges(5,
+                new int[]{1}, new int[]{2}, 1);
+
+        assertEquals(0, network.sample(5, new SplittableRandom(42), new int[ContactWindow.MAX_NUMBER_OF_CONTACTS]));
+    }
+
+    private static int[] sorted(int[] ids) {
+        Arrays.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,164 @@
+package com.diseasesimulator.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    void expiresTimersAtTheBoundariesOfTheLevels() {
+        long[] deadlines = {1, 63, 64, 65, 4095, 4096, 4097, 262143, 262144, 262145};
+
+        for (long deadline : deadlines) {
+            assertEquals(deadline, expiry(new TimingWheel<>(), deadline), "deadline " + deadline);
+        }
+    }
+
+    @Test
+    void expiresTimersAtTheBoundariesOfTheLevelsWhileTheWheelIsAdvanced() {
+        long[] delays = {63, 64, 4095, 4096};
+
+        for (long advanced : new long[]{1, 63, 64, 100, 4095, 4096, 5000}) {
+            for (long delay : delays) {
+                TimingWheel<Long> wheel = new TimingWheel<>();
+                advance(wheel, advanced);
+
+                assertEquals(advanced + delay, expiry(wheel, advanced + delay),
+                        "delay " + delay + " after " + advanced + " ticks");
+            }
+        }
+    }
+
+    @Test
+    void expiresTimersBeyondTheHighestLevelAtTheirDeadline() {
+        long horizon = 1L << 24; // how many ticks the four levels cover
+
+        for (long deadline : new long[]{horizon - 1, horizon, horizon + 1, 2 * horizon + 4097}) {
+            assertEquals(deadline, expiry(new TimingWheel<>(), deadline), "deadline " + deadline);
+        }
+    }
+
+    @Test
+    void expiresTimersWhichAreDueWithTheNextTick() {
+        TimingWheel<Long> wheel = new TimingWheel<>();
+        advance(wheel, 10);
+
+        assertEquals(11, expiry(wheel, 5));
+        assertEquals(12, expiry(wheel, 12));
+    }
+
+    @Test
+    void expiresTimersRescheduledWhileExpiring() {
+        TimingWheel<Long> wheel = new TimingWheel<>();
+        List<Long> expired = new ArrayList<>();
+        long[] delays = {1, 63, 64, 4095, 4096};
+
+        wheel.schedule(0L, 1);
+
+        // every expired timer is scheduled again with the next delay, from within advance
+        while (!wheel.isEmpty()) {
+            wheel.advance(index -> {
+                expired.add(wheel.getTime());
+                if (index + 1 < delays.length) wheel.schedule(index + 1, wheel.getTime() + delays[(int) (index + 1)]);
+            });
+        }
+
+        List<Long> expected = new ArrayList<>();
+        long time = 1;
+        expected.add(time);
+        for (int i = 1; i < delays.length; i++) {
+            time += delays[i];
+            expected.add(time);
+        }
+
+        assertEquals(expected, expired);
+    }
+
+    @Test
+    void expiresRescheduledTimersWithTheNextTickAtTheEarliest() {
+        TimingWheel<Long> wheel = new TimingWheel<>();
+        List<Long> expired = new ArrayList<>();
+
+        wheel.schedule(0L, 64);
+        wheel.advance(timer -> fail());
+        advance(wheel, 62);
+        wheel.advance(timer -> {
+            expired.add(wheel.getTime());
+            if (timer == 0) wheel.schedule(1L, wheel.getTime());
+        });
+        wheel.advance(timer -> expired.add(wheel.getTime()));
+
+        assertEquals(List.of(64L, 65L), expired);
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void expiresEveryTimerExactlyOnceAtItsDeadline() {
+        TimingWheel<Long> wheel = new TimingWheel<>();
+        SplittableRandom random = new SplittableRandom(42);
+        int[] expirations = new int[100000];
+        long[] deadlines = new long[expirations.length];
+
+        for (int timer = 0; timer < deadlines.length; timer++) {
+            deadlines[timer] = random.nextLong(1, 300000);
+            wheel.schedule((long) timer, deadlines[timer]);
+        }
+
+        while (!wheel.isEmpty()) {
+            wheel.advance(timer -> {
+                assertEquals(deadlines[(int) (long) timer], wheel.getTime());
+                expirations[(int) (long) timer]++;
+            });
+        }
+
+        for (int count : expirations) {
+            assertEquals(1, count);
+        }
+    }
+
+    @Test
+    void isEmptyOnceEveryTimerHasExpired() {
+        TimingWheel<Long> wheel = new TimingWheel<>();
+        assertTrue(wheel.isEmpty());
+
+        wheel.schedule(1L, 2);
+        assertFalse(wheel.isEmpty());
+
+        wheel.advance(timer -> { });
+        assertFalse(wheel.isEmpty());
+
+        wheel.advance(timer -> { });
+        assertTrue(wheel.isEmpty());
+    }
+
+    /**
+     * @return the tick a timer scheduled at the supplied deadline expires at
+     */
+    private static long expiry(TimingWheel<Long> wheel, long deadline) {
+        long[] expiredAt = {-1};
+        wheel.schedule(deadline, deadline);
+
+        while (!wheel.isEmpty()) {
+            wheel.advance(timer -> expiredAt[0] = wheel.getTime());
+        }
+
+        return expiredAt[0];
+    }
+
+    private static void advance(TimingWheel<Long> wheel, long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            wheel.advance(timer -> fail());
+        }
+    }
+
+    private static void fail() {
+        throw new AssertionError("no timer is due");
+    }
+}
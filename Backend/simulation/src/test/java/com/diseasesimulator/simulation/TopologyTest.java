@@ -0,0 +1,144 @@
+package com.diseasesimulator.simulation;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopologyTest {
+
+    // covers more than one chunk, so chunks generated in parallel are covered as well
+    private static final int NUMBER_OF_PEOPLE = 70000;
+
+    private static final Config WATTS_STROGATZ = ConfigFactory.parseString("degree = 10, rewiring-probability = 0.1");
+    private static final Config BARABASI_ALBERT = ConfigFactory.parseString("edges-per-individual = 5");
+    private static final Config HOUSEHOLD =
+            ConfigFactory.parseString("household-size = 4, workplace-size = 20, workplace-contacts = 4");
+
+    @Test
+    void wattsStrogatzIsConsistent() {
+        assertConsistent(generate(Topology.WATTS_STROGATZ, NUMBER_OF_PEOPLE, 42, WATTS_STROGATZ));
+    }
+
+    @Test
+    void wattsStrogatzWithoutRewiringIsARing() {
+        Config config = ConfigFactory.parseString("degree = 10, rewiring-probability = 0");
+        CsrContactNetwork network = generate(Topology.WATTS_STROGATZ, NUMBER_OF_PEOPLE, 42, config);
+
+        assertEquals(NUMBER_OF_PEOPLE * 10, network.getNumberOfContacts());
+        for (int id = 1; id <= NUMBER_OF_PEOPLE; id++) {
+            assertEquals(10, network.getNumberOfContacts(id));
+        }
+    }
+
+    @Test
+    void barabasiAlbertIsConsistent() {
+        CsrContactNetwork network = generate(Topology.BARABASI_ALBERT, NUMBER_OF_PEOPLE, 42, BARABASI_ALBERT);
+
+        assertConsistent(network);
+        // the first 5 individuals after the first one attach to it, every further one attaches to
+        // 5 earlier ones, so there are no self loops
+        assertEquals(2 * (5 + (NUMBER_OF_PEOPLE - 6) * 5), network.getNumberOfContacts());
+        for (int id = 2; id <= NUMBER_OF_PEOPLE; id++) {
+            assertTrue(network.getNumberOfContacts(id) >= 1);
+        }
+    }
+
+    @Test
+    void householdIsConsistent() {
+        assertConsistent(generate(Topology.HOUSEHOLD, NUMBER_OF_PEOPLE, 42, HOUSEHOLD));
+    }
+
+    @Test
+    void householdWithoutWorkplacesConnectsHouseholds() {
+        Config config = ConfigFactory.parseString("household-size = 4, workplace-size = 20, workplace-contacts = 0");
+        CsrContactNetwork network = generate(Topology.HOUSEHOLD, 10, 42, config);
+
+        assertEquals(3, network.getNumberOfContacts(1));
+        assertEquals(3, network.getNumberOfContacts(8));
+        // the last household only has two members
+        assertEquals(1, network.getNumberOfContacts(9));
+        assertEquals(1, network.getNumberOfContacts(10));
+    }
+
+    @Test
+    void sameSeedLeadsToSameNetwork() {
+        assertSameNetwork(generate(Topology.WATTS_STROGATZ, NUMBER_OF_PEOPLE, 42, WATTS_STROGATZ),
+                generate(Topology.WATTS_STROGATZ, NUMBER_OF_PEOPLE, 42, WATTS_STROGATZ));
+        assertSameNetwork(generate(Topology.BARABASI_ALBERT, NUMBER_OF_PEOPLE, 42, BARABASI_ALBERT),
+                generate(Topology.BARABASI_ALBERT, NUMBER_OF_PEOPLE, 42, BARABASI_ALBERT));
+        assertSameNetwork(generate(Topology.HOUSEHOLD, NUMBER_OF_PEOPLE, 42, HOUSEHOLD),
+                generate(Topology.HOUSEHOLD, NUMBER_OF_PEOPLE, 42, HOUSEHOLD));
+    }
+
+    @Test
+    void differentSeedsLeadToDifferentNetworks() {
+        assertFalse(isSameNetwork(generate(Topology.WATTS_STROGATZ, NUMBER_OF_PEOPLE, 42, WATTS_STROGATZ),
+                generate(Topology.WATTS_STROGATZ, NUMBER_OF_PEOPLE, 43, WATTS_STROGATZ)));
+        assertFalse(isSameNetwork(generate(Topology.BARABASI_ALBERT, NUMBER_OF_PEOPLE, 42, BARABASI_ALBERT),
+                generate(Topology.BARABASI_ALBERT, NUMBER_OF_PEOPLE, 43, BARABASI_ALBERT)));
+        assertFalse(isSameNetwork(generate(Topology.HOUSEHOLD, NUMBER_OF_PEOPLE, 42, HOUSEHOLD),
+                generate(Topology.HOUSEHOLD, NUMBER_OF_PEOPLE, 43, HOUSEHOLD)));
+    }
+
+    @Test
+    void smallNetworksAreConsistent() {
+        for (int numberOfPeople = 2; numberOfPeople <= 12; numberOfPeople++) {
+            assertConsistent(generate(Topology.WATTS_STROGATZ, numberOfPeople, 42, WATTS_STROGATZ));
+            assertConsistent(generate(Topology.BARABASI_ALBERT, numberOfPeople, 42, BARABASI_ALBERT));
+            assertConsistent(generate(Topology.HOUSEHOLD, numberOfPeople, 42, HOUSEHOLD));
+        }
+    }
+
+    private static CsrContactNetwork generate(Topology topology, int numberOfPeople, long seed, Config config) {
+        return (CsrContactNetwork) topology.generate(numberOfPeople, seed, config);
+    }
+
+    /**
+     * Asserts that every contact is a valid id other than the individual itself, that the
+     * degrees add up to the number of contacts and that every contact is mutual.
+     */
+    private static void assertConsistent(CsrContactNetwork network) {
+        int numberOfPeople = network.getNumberOfPeople();
+        long sumOfDegrees = 0;
+        Map<Long, Integer> edges = new HashMap<>();
+
+        for (int id = 1; id <= numberOfPeople; id++) {
+            int[] contacts = network.getContacts(id);
+            assertEquals(contacts.length, network.getNumberOfContacts(id));
+            sumOfDegrees += contacts.length;
+
+            for (int contact : contacts) {
+                assertTrue(contact >= 1 && contact <= numberOfPeople, "contact " + contact + " of " + id);
+                assertTrue(contact != id, "self loop of " + id);
+                edges.merge((long) id << 32 | contact, 1, Integer::sum);
+            }
+        }
+
+        assertEquals(network.getNumberOfContacts(), sumOfDegrees);
+        assertEquals(0, sumOfDegrees % 2);
+        edges.forEach((edge, count) ->
+                assertEquals(count, edges.get(edge << 32 | edge >>> 32), "contacts aren't mutual"));
+    }
+
+    private static void assertSameNetwork(CsrContactNetwork expected, CsrContactNetwork actual) {
+        assertTrue(isSameNetwork(expected, actual));
+    }
+
+    private static boolean isSameNetwork(CsrContactNetwork a, CsrContactNetwork b) {
+        if (a.getNumberOfPeople() != b.getNumberOfPeople()) return false;
+
+        for (int id = 1; id <= a.getNumberOfPeople(); id++) {
+            if (!Arrays.equals(a.getContacts(id), b.getContacts(id))) return false;
+        }
+
+        return true;
+    }
+}